@@ -1,32 +1,103 @@
 package gitlet;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.Serializable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 
 /** Blob class for Gitlet, the tiny stupid version-control system.
+ *  A blob only remembers a file's name and sha; its bytes are streamed
+ *  in fixed-size chunks so that neither hashing nor staging ever holds a
+ *  whole file on the heap.
  *  @author Varun Jadia
  */
-public class Blob implements Serializable {
+public class Blob {
+
+    /** Size of the chunks files are read and written in. */
+    static final int CHUNK = 1 << 16;
+
+    /** Directory holding staged blobs. */
+    static final File STAGING = new File(".gitlet/staging");
+
     /** stores filename. */
     private String _filename;
 
     /** stores shacode. */
     private String _shacode;
 
-    /** stores contents of file as a string. */
-    private String _contents;
-
-    /** initializing method. NAME */
+    /** initializing method: hashes file NAME without storing it. */
     public Blob(String name) {
-        File file = new File(name);
         _filename = name;
-        _contents = Utils.readContentsAsString(file);
-        _shacode = Utils.sha1(_filename, _contents);
+        _shacode = stream(name, null);
+    }
+
+    /** Blob for file NAME whose sha is already known to be SHACODE. */
+    Blob(String name, String shacode) {
+        _filename = name;
+        _shacode = shacode;
+    }
+
+    /** Hash file NAME and copy it into the staging area in a single
+     *  pass.  RETURN the staged blob. */
+    static Blob stage(String name) {
+        File tmp = Utils.tempfile(STAGING);
+        String sha = stream(name, tmp);
+        File staged = new File(STAGING, sha);
+        if (staged.exists()) {
+            tmp.delete();
+        } else {
+            Utils.install(tmp, staged);
+        }
+        return new Blob(name, sha);
+    }
+
+    /** Return the sha of file NAME (which also covers the name itself),
+     *  reading it in CHUNK-sized pieces.  If COPY is non-null, each chunk
+     *  is also written to COPY through the repository's codec, its header
+     *  corrected afterwards if the file changed length while read. */
+    private static String stream(String name, File copy) {
+        MessageDigest md = Utils.sha1digest();
+        md.update(name.getBytes(StandardCharsets.UTF_8));
+        ByteBuffer buf = ByteBuffer.allocate(CHUNK);
+        long size, total = 0;
+        try (FileChannel in = FileChannel.open(new File(name).toPath())) {
+            size = in.size();
+            try (OutputStream out = copy == null ? null
+                     : ObjectStore.encoder(new FileOutputStream(copy), size)) {
+                while (in.read(buf) >= 0) {
+                    buf.flip();
+                    md.update(buf.array(), 0, buf.limit());
+                    if (out != null) {
+                        out.write(buf.array(), 0, buf.limit());
+                    }
+                    total += buf.limit();
+                    buf.clear();
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (copy != null && total != size) {
+            ObjectStore.setsize(copy, total);
+        }
+        return Utils.hex(md.digest());
+    }
+
+    /** Write this blob's name and sha to OUT. */
+    void encode(DataOutputStream out) throws IOException {
+        Utils.writestring(out, _filename);
+        Utils.writesha(out, _shacode);
     }
 
-    /** get contents of blob. RETURN */
-    public String getcontents() {
-        return _contents;
+    /** Return a blob written by encode, read from IN. */
+    static Blob decode(DataInputStream in) throws IOException {
+        return new Blob(Utils.readstring(in), Utils.readsha(in));
     }
 
     /** get filename. RETURN */
@@ -0,0 +1,99 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collection;
+
+/** Bloom filter over shas for Gitlet, the tiny stupid version-control
+ *  system.  A filter answers "definitely absent" for most shas that were
+ *  never added, without touching the index it stands in front of.  Since
+ *  shas are already uniformly distributed, the HASHES bit positions for a
+ *  sha are derived from its first eight bytes by double hashing.
+ *
+ *  Layout: "GBLM", a version, the number of bits, then the bits.  The file
+ *  is memory-mapped, so opening a filter costs the same however many
+ *  shas it holds.
+ *  @author Varun Jadia
+ */
+class Bloom {
+
+    /** Bits allotted per sha; with HASHES probes this gives a false
+     *  positive rate of about 1%. */
+    static final int BITSPER = 10;
+
+    /** Number of bit positions tested per sha. */
+    static final int HASHES = 7;
+
+    /** Magic bytes starting a filter. */
+    private static final byte[] MAGIC = {'G', 'B', 'L', 'M'};
+
+    /** Format version. */
+    private static final int VERSION = 1;
+
+    /** Position of the first byte of bits. */
+    private static final int BITSPOS = MAGIC.length + 2 + 8;
+
+    /** The mapped filter file. */
+    private final MappedByteBuffer _buf;
+
+    /** Number of bits in the filter. */
+    private final long _nbits;
+
+    /** The filter read from FILE. */
+    Bloom(File file) {
+        try (FileChannel ch = FileChannel.open(file.toPath())) {
+            _buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        byte[] magic = new byte[MAGIC.length];
+        _buf.get(0, magic);
+        if (!Arrays.equals(magic, MAGIC)
+                || _buf.getShort(MAGIC.length) != VERSION) {
+            throw Utils.error("Unrecognized filter format.");
+        }
+        _nbits = _buf.getLong(MAGIC.length + 2);
+    }
+
+    /** Write a filter holding SHAS to FILE. */
+    static void write(File file, Collection<String> shas) {
+        long nbits = Math.max(64, (long) shas.size() * BITSPER);
+        byte[] bits = new byte[(int) ((nbits + 7) / 8)];
+        for (String sha : shas) {
+            for (long pos : positions(sha, nbits)) {
+                bits[(int) (pos >>> 3)] |= 1 << (pos & 7);
+            }
+        }
+        ByteBuffer buf = ByteBuffer.allocate(BITSPOS + bits.length);
+        buf.put(MAGIC).putShort((short) VERSION).putLong(nbits).put(bits);
+        Utils.writeatomic(file, buf.array());
+    }
+
+    /** Return false if SHA is certainly not in this filter, and true if
+     *  it may be. */
+    boolean mightcontain(String sha) {
+        for (long pos : positions(sha, _nbits)) {
+            if ((_buf.get(BITSPOS + (int) (pos >>> 3)) & (1 << (pos & 7)))
+                    == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the HASHES bit positions of SHA in a filter of NBITS
+     *  bits. */
+    private static long[] positions(String sha, long nbits) {
+        long h1 = Long.parseLong(sha.substring(0, 8), 16);
+        long h2 = Long.parseLong(sha.substring(8, 16), 16) | 1;
+        long[] result = new long[HASHES];
+        for (int i = 0; i < HASHES; i += 1) {
+            result[i] = Math.floorMod(h1 + i * h2, nbits);
+        }
+        return result;
+    }
+}
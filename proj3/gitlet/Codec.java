@@ -0,0 +1,137 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** Compression codecs for objects stored by Gitlet, the tiny stupid
+ *  version-control system.  Each stored object starts with a short header
+ *  naming the codec its payload was written with, so objects written
+ *  under different settings can live side by side.
+ *  @author Varun Jadia
+ */
+enum Codec {
+
+    /** Payload stored as-is. */
+    NONE(0, "none") {
+        @Override
+        OutputStream encode(OutputStream out) {
+            return out;
+        }
+
+        @Override
+        InputStream decode(InputStream in) {
+            return in;
+        }
+    },
+
+    /** Payload compressed with java.util.zip's Deflater. */
+    DEFLATE(1, "deflate") {
+        @Override
+        OutputStream encode(OutputStream out) {
+            final Deflater def = new Deflater(level());
+            return new DeflaterOutputStream(out, def, Blob.CHUNK) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        def.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        InputStream decode(InputStream in) {
+            final Inflater inf = new Inflater();
+            return new InflaterInputStream(in, inf, Blob.CHUNK) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inf.end();
+                    }
+                }
+            };
+        }
+    };
+
+    /** Magic bytes that start every object written through a codec. */
+    static final byte[] MAGIC = {'G', 'L', 'T'};
+
+    /** Id of this codec, as written in the object header. */
+    private final int _id;
+
+    /** Name of this codec, as used in the repository config. */
+    private final String _name;
+
+    /** A codec with header id ID and config name NAME. */
+    Codec(int id, String name) {
+        _id = id;
+        _name = name;
+    }
+
+    /** Return OUT wrapped so that bytes written to it are encoded. */
+    abstract OutputStream encode(OutputStream out);
+
+    /** Return IN wrapped so that bytes read from it are decoded. */
+    abstract InputStream decode(InputStream in);
+
+    /** get header id. RETURN */
+    int getid() {
+        return _id;
+    }
+
+    /** get config name. RETURN */
+    String getname() {
+        return _name;
+    }
+
+    /** Return the codec whose header id is ID. */
+    static Codec byid(int id) {
+        for (Codec codec : values()) {
+            if (codec._id == id) {
+                return codec;
+            }
+        }
+        throw Utils.error("Unknown codec id %d.", id);
+    }
+
+    /** Return the codec called NAME, or null if there is none. */
+    static Codec byname(String name) {
+        for (Codec codec : values()) {
+            if (codec._name.equals(name)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /** Return true iff LEVEL is a Deflater compression level. */
+    static boolean validlevel(int level) {
+        return level == Deflater.DEFAULT_COMPRESSION
+            || level >= Deflater.NO_COMPRESSION
+            && level <= Deflater.BEST_COMPRESSION;
+    }
+
+    /** Return the configured core.compressionlevel, or the default level
+     *  if it is not a valid one. */
+    static int level() {
+        int level = Config.getint("core.compressionlevel",
+                                  Deflater.DEFAULT_COMPRESSION);
+        return validlevel(level) ? level : Deflater.DEFAULT_COMPRESSION;
+    }
+
+    /** Return the codec this repository is configured to write with. */
+    static Codec configured() {
+        Codec codec = byname(Config.get("core.compression",
+                                        DEFLATE.getname()));
+        return codec == null ? DEFLATE : codec;
+    }
+}
@@ -1,15 +1,30 @@
 package gitlet;
 
-import java.io.Serializable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
 /** Commit class for Gitlet, the tiny stupid version-control system.
+ *  Commits are stored in the binary format written by encode and refer
+ *  to their files through a root Tree.  Commits written by the original
+ *  Gitlet are still read, through Legacy; their trees are built when
+ *  first needed.
  *  @author Varun Jadia
  */
 
-public class Commit implements Serializable {
+public class Commit {
+
+    /** Magic bytes starting an encoded commit. */
+    private static final byte[] MAGIC = {'G', 'C', 'M', 'T'};
+
+    /** Version of the commit encoding. */
+    private static final int VERSION = 1;
 
     /** timestamp of commit. */
     private String _timestamp;
@@ -17,17 +32,13 @@ public class Commit implements Serializable {
     /** log message for commit. */
     private String _logmsg;
 
-    /** repo/directory that the commit is part of. */
-    private Repo _ref;
-
-    /** uid for commit. */
-    private String _uid;
-
-    /** Hashmap containing files. */
-    private HashMap<String, Blob> _files = new HashMap<>();
+    /** Hashmap from tracked filenames to the sha of their blobs, or null
+     *  if not yet read from _tree. */
+    private HashMap<String, String> _files = new HashMap<>();
 
-    /** Hashmap containing tracked files. */
-    private HashMap<String, String> _trackedfiles = new HashMap<>();
+    /** Sha of the root tree of this commit's files, or null if it is
+     *  empty or has not been built from _files yet. */
+    private String _tree;
 
     /** Commit parent id. */
     private String _parenthash;
@@ -35,9 +46,6 @@ public class Commit implements Serializable {
     /** Commit mergeparent id. */
     private String _mergeparenthash;
 
-    /** String contents of all blobs. */
-    private ArrayList<String> _filecontents;
-
     /** Return parents of a commit.RETURN.*/
     public ArrayList<String> getparents() {
         ArrayList<String> arr = new ArrayList<>();
@@ -57,37 +65,74 @@ public class Commit implements Serializable {
         _parenthash = parent;
     }
 
-    /**commit initializer for other commits. MSG TIME FILES PARENT*/
+    /**commit initializer for other commits. MSG TIME TREE PARENT*/
+    Commit(String msg, String time, String tree, String parent) {
+        this(msg, time, tree, parent, null);
+    }
+
+    /** commit initializer for merges.MSG.TIME.TREE.PARENT.MERGEPARENT. */
     Commit(String msg, String time,
-           HashMap<String, Blob> files, String parent) {
+           String tree, String parent, String mergeparent) {
         _logmsg = msg;
         _timestamp = time;
-        _files = files;
-
-        for (String file : _files.keySet()) {
-            if (_filecontents == null) {
-                _filecontents = new ArrayList<>();
-            }
-            _filecontents.add(_files.get(file).getcontents());
-        }
+        _tree = tree;
+        _files = null;
         _parenthash = parent;
+        _mergeparenthash = mergeparent;
     }
 
-    /** commit initializer for merges.MSG.TIME.FILES.PARENT.MERGEPARENT. */
-    Commit(String msg, String time,
-           HashMap<String, Blob> files, String parent, String mergeparent) {
-        _logmsg = msg;
-        _timestamp = time;
-        _files = files;
+    /** Return this commit in Gitlet's binary commit format. */
+    byte[] encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.write(MAGIC);
+            out.writeShort(VERSION);
+            Utils.writestring(out, _logmsg);
+            Utils.writestring(out, _timestamp);
+            Utils.writesha(out, _parenthash);
+            Utils.writesha(out, _mergeparenthash);
+            Utils.writesha(out, gettree());
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding commit.");
+        }
+    }
 
-        for (String file : _files.keySet()) {
-            if (_filecontents == null) {
-                _filecontents = new ArrayList<>();
+    /** Return the commit encoded in BYTES, which may also be a commit
+     *  saved by the original Gitlet. */
+    static Commit decode(byte[] bytes) {
+        if (Utils.isserialized(bytes)) {
+            Object obj = Legacy.read(bytes);
+            if (!(obj instanceof Legacy.OldCommit)) {
+                throw Utils.error("Unrecognized commit format.");
             }
-            _filecontents.add(_files.get(file).getcontents());
+            return Legacy.convert((Legacy.OldCommit) obj);
         }
-        _parenthash = parent;
-        _mergeparenthash = mergeparent;
+        try {
+            DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(bytes));
+            Utils.readheader(in, MAGIC, VERSION);
+            String msg = Utils.readstring(in);
+            String time = Utils.readstring(in);
+            String parent = Utils.readsha(in);
+            String mergeparent = Utils.readsha(in);
+            return new Commit(msg, time, Utils.readsha(in), parent,
+                              mergeparent);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the commit stored in FILE. */
+    static Commit read(File file) {
+        return decode(ObjectStore.readall(file));
+    }
+
+    /** Store this commit in FILE. */
+    void write(File file) {
+        ObjectStore.write(file, encode());
     }
 
     /** set timestamp for commit. TIMESTAMP*/
@@ -95,14 +140,21 @@ public class Commit implements Serializable {
         this._timestamp = timestamp;
     }
 
-    /** get files. RETURN*/
-    public HashMap<String, Blob> getfiles() {
+    /** get map from filenames to blob shas. RETURN*/
+    public HashMap<String, String> getfiles() {
+        if (_files == null) {
+            _files = Tree.flatten(_tree);
+        }
         return _files;
     }
 
-    /** get tracked files. RETURN*/
-    public HashMap<String, String> gettrackedfiles() {
-        return _trackedfiles;
+    /** get the sha of the root tree, building and storing the tree first
+     *  if this commit was read from the original format. RETURN*/
+    public String gettree() {
+        if (_tree == null && _files != null && !_files.isEmpty()) {
+            _tree = Tree.build(_files);
+        }
+        return _tree;
     }
 
     /** get hashid for commit. RETURN*/
@@ -121,13 +173,9 @@ public class Commit implements Serializable {
     }
 
     /** set files. FILES*/
-    public void setfiles(HashMap<String, Blob> files) {
+    public void setfiles(HashMap<String, String> files) {
         this._files = files;
-    }
-
-    /** set tracked files. TRACKEDFILES*/
-    public void settrackedfiles(HashMap<String, String> trackedfiles) {
-        this._trackedfiles = trackedfiles;
+        this._tree = null;
     }
 
     /** get timestamp. RETURN. */
@@ -0,0 +1,286 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/** Commit-graph cache for Gitlet, the tiny stupid version-control system.
+ *  .gitlet/commit-graph holds one fixed-size record per commit, in an
+ *  order where parents always come before their children: the raw commit
+ *  id, the positions of its parent and merge parent (NONE if absent), its
+ *  generation number (1 for a root, otherwise one more than its largest
+ *  parent generation) and its timestamp in epoch seconds.  The file is
+ *  memory-mapped, so walking history never deserializes a commit, and a
+ *  new commit only appends one record.
+ *  @author Varun Jadia
+ */
+class CommitGraph {
+
+    /** The graph file. */
+    static final File GRAPH = new File(".gitlet/commit-graph");
+
+    /** Parent position meaning "no such parent". */
+    static final int NONE = -1;
+
+    /** Magic bytes starting the graph file. */
+    private static final byte[] MAGIC = {'G', 'C', 'G', 'R'};
+
+    /** Format version. */
+    private static final int VERSION = 1;
+
+    /** Length of the file header. */
+    private static final int HEADER = MAGIC.length + 2;
+
+    /** Length of a raw commit id. */
+    private static final int SHALEN = ObjectIndex.SHALEN;
+
+    /** Length of one record: id, two parents, generation, timestamp. */
+    private static final int RECORD = SHALEN + 4 + 4 + 4 + 8;
+
+    /** Format of commit timestamps. */
+    private static final DateTimeFormatter TIMESTAMP =
+        DateTimeFormatter.ofPattern("EEE MMM d HH:mm:ss yyyy xxxx");
+
+    /** The mapped graph file, or null if not yet mapped. */
+    private static MappedByteBuffer _buf;
+
+    /** Number of records in the graph. */
+    private static int _size;
+
+    /** Positions of the commits in the graph, by id.  Records are only
+     *  ever appended, so this covers the first _positions.size() records
+     *  and each remap adds just the records appended since. */
+    private static HashMap<String, Integer> _positions;
+
+    /** Append the record for commit COMM, whose id is ID.  Other
+     *  processes may be appending too, so this remaps the graph while
+     *  holding the lock. */
+    static void add(String id, Commit comm) {
+        Refs.locked(() -> {
+            _buf = null;
+            insert(id, comm);
+        });
+    }
+
+    /** Append the record for COMM, whose id is ID, unless the graph
+     *  already has it. */
+    private static void insert(String id, Commit comm) {
+        load();
+        if (_positions.containsKey(id)) {
+            return;
+        }
+        int[] parents = {NONE, NONE};
+        int generation = 1;
+        List<String> parentids = comm.getparents();
+        for (int i = 0; i < parentids.size(); i += 1) {
+            parents[i] = position(parentids.get(i));
+            if (parents[i] != NONE) {
+                generation = Math.max(generation,
+                                      generation(parents[i]) + 1);
+            }
+        }
+        append(Arrays.asList(record(id, parents, generation,
+                                    comm.gettimestamp())));
+    }
+
+    /** Return the number of commits in the graph. */
+    static int size() {
+        load();
+        return _size;
+    }
+
+    /** Return the position of commit ID, or NONE if it is not in the
+     *  graph. */
+    static int position(String id) {
+        load();
+        Integer pos = _positions.get(id);
+        return pos == null ? NONE : pos;
+    }
+
+    /** Return the id of the commit at POS. */
+    static String id(int pos) {
+        load();
+        byte[] raw = new byte[SHALEN];
+        _buf.get(offset(pos), raw);
+        return Utils.hex(raw);
+    }
+
+    /** Return the positions of the parents of the commit at POS, first
+     *  parent first. */
+    static int[] parents(int pos) {
+        load();
+        int first = _buf.getInt(offset(pos) + SHALEN);
+        int second = _buf.getInt(offset(pos) + SHALEN + 4);
+        if (first == NONE) {
+            return new int[0];
+        } else if (second == NONE) {
+            return new int[] {first};
+        }
+        return new int[] {first, second};
+    }
+
+    /** Return the generation number of the commit at POS. */
+    static int generation(int pos) {
+        load();
+        return _buf.getInt(offset(pos) + SHALEN + 8);
+    }
+
+    /** Return the timestamp, in epoch seconds, of the commit at POS. */
+    static long timestamp(int pos) {
+        load();
+        return _buf.getLong(offset(pos) + SHALEN + 12);
+    }
+
+    /** Return the seconds since the epoch denoted by the commit
+     *  timestamp TIME, or 0 if it cannot be parsed. */
+    static long parsetime(String time) {
+        try {
+            return ZonedDateTime.parse(time, TIMESTAMP).toEpochSecond();
+        } catch (DateTimeParseException excp) {
+            return 0;
+        }
+    }
+
+    /** Return the position of record POS in the file. */
+    private static int offset(int pos) {
+        return HEADER + pos * RECORD;
+    }
+
+    /** Return the record for commit ID with parent positions PARENTS,
+     *  generation GENERATION and timestamp TIME. */
+    private static ByteBuffer record(String id, int[] parents,
+                                     int generation, String time) {
+        ByteBuffer rec = ByteBuffer.allocate(RECORD);
+        rec.put(Utils.unhex(id)).putInt(parents[0]).putInt(parents[1]);
+        rec.putInt(generation).putLong(parsetime(time));
+        rec.flip();
+        return rec;
+    }
+
+    /** Append RECORDS to the graph file, first cutting off any partial
+     *  record left by an interrupted append, and remap it. */
+    private static void append(List<ByteBuffer> records) {
+        try (FileChannel ch = FileChannel.open(GRAPH.toPath(),
+                StandardOpenOption.WRITE)) {
+            long end = ch.size() - (ch.size() - HEADER) % RECORD;
+            ch.truncate(end);
+            ch.position(end);
+            for (ByteBuffer rec : records) {
+                while (rec.hasRemaining()) {
+                    ch.write(rec);
+                }
+            }
+            ch.force(true);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _buf = null;
+        load();
+    }
+
+    /** Map the graph file, first building it from the commits directory
+     *  if this repository predates it. */
+    private static void load() {
+        if (_buf != null) {
+            return;
+        }
+        if (!GRAPH.exists()) {
+            build();
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(GRAPH.toPath())) {
+            _buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        byte[] magic = new byte[MAGIC.length];
+        _buf.get(0, magic);
+        if (!Arrays.equals(magic, MAGIC)
+                || _buf.getShort(MAGIC.length) != VERSION) {
+            throw Utils.error("Unrecognized commit-graph format.");
+        }
+        _size = (_buf.capacity() - HEADER) / RECORD;
+        if (_positions == null || _positions.size() > _size) {
+            _positions = new HashMap<>();
+        }
+        byte[] raw = new byte[SHALEN];
+        for (int pos = _positions.size(); pos < _size; pos += 1) {
+            _buf.get(offset(pos), raw);
+            _positions.put(Utils.hex(raw), pos);
+        }
+    }
+
+    /** Write a graph of every commit in the commits directory, parents
+     *  before children. */
+    private static void build() {
+        HashMap<String, Commit> commits = new HashMap<>();
+        for (String name : Utils.plainFilenamesIn(CommitIndex.COMMITS)) {
+            if (name.length() == Utils.UID_LENGTH) {
+                commits.put(name,
+                            Commit.read(new File(CommitIndex.COMMITS, name)));
+            }
+        }
+        ByteBuffer head = ByteBuffer.allocate(HEADER);
+        head.put(MAGIC).putShort((short) VERSION);
+        Utils.writeatomic(GRAPH, head.array());
+        _positions = null;
+
+        List<String> order = new ArrayList<>();
+        ArrayDeque<String> stack = new ArrayDeque<>();
+        HashMap<String, Integer> placed = new HashMap<>();
+        for (String root : commits.keySet()) {
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                String id = stack.peek();
+                if (placed.containsKey(id)) {
+                    stack.pop();
+                    continue;
+                }
+                boolean ready = true;
+                for (String parent : commits.get(id).getparents()) {
+                    if (!placed.containsKey(parent)
+                            && commits.containsKey(parent)) {
+                        stack.push(parent);
+                        ready = false;
+                    }
+                }
+                if (ready) {
+                    stack.pop();
+                    placed.put(id, order.size());
+                    order.add(id);
+                }
+            }
+        }
+
+        List<ByteBuffer> records = new ArrayList<>();
+        HashMap<String, Integer> generations = new HashMap<>();
+        for (String id : order) {
+            Commit comm = commits.get(id);
+            int[] parents = {NONE, NONE};
+            int generation = 1;
+            List<String> parentids = comm.getparents();
+            for (int i = 0; i < parentids.size(); i += 1) {
+                if (placed.containsKey(parentids.get(i))) {
+                    parents[i] = placed.get(parentids.get(i));
+                    generation = Math.max(generation,
+                            generations.get(parentids.get(i)) + 1);
+                }
+            }
+            generations.put(id, generation);
+            records.add(record(id, parents, generation,
+                               comm.gettimestamp()));
+        }
+        append(records);
+    }
+}
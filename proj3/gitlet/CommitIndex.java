@@ -0,0 +1,167 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/** Index of every commit id in a Gitlet repository.  Most ids live in a
+ *  memory-mapped ObjectIndex, .gitlet/commits.idx; ids of recent commits
+ *  are appended to the small text file .gitlet/commits.recent and folded
+ *  into the index once MAXRECENT of them have built up, so a commit never
+ *  has to rewrite the whole index.  A Bloom filter over the ids in the
+ *  index, .gitlet/commits.bloom, rules out most ids that do not exist
+ *  before the index is searched.
+ *  @author Varun Jadia
+ */
+class CommitIndex {
+
+    /** The sorted, memory-mapped index. */
+    static final File INDEX = new File(".gitlet/commits.idx");
+
+    /** Ids added since INDEX was last written, one per line. */
+    static final File RECENT = new File(".gitlet/commits.recent");
+
+    /** Bloom filter over the ids in INDEX, always written before INDEX
+     *  so that it never misses one of them. */
+    static final File BLOOM = new File(".gitlet/commits.bloom");
+
+    /** Directory holding the commits themselves. */
+    static final File COMMITS = new File(".gitlet/commits");
+
+    /** Number of recent ids that triggers a rewrite of INDEX. */
+    static final int MAXRECENT = 256;
+
+    /** The mapped INDEX, or null if not yet opened. */
+    private static ObjectIndex _index;
+
+    /** Contents of RECENT, or null if not yet read. */
+    private static List<String> _recent;
+
+    /** The mapped BLOOM, or null if not yet opened. */
+    private static Bloom _bloom;
+
+    /** Record that commit ID exists.  Other processes may be adding
+     *  commits too, so this rereads the index while holding the lock. */
+    static void add(String id) {
+        Refs.locked(() -> {
+            _index = null;
+            insert(id);
+        });
+    }
+
+    /** Add ID to the index, if it is not already there. */
+    private static void insert(String id) {
+        if (contains(id)) {
+            return;
+        }
+        _recent.add(id);
+        if (_recent.size() >= MAXRECENT) {
+            TreeSet<String> all = new TreeSet<>(_recent);
+            for (int k = 0; k < _index.size(); k += 1) {
+                all.add(_index.sha(k));
+            }
+            Bloom.write(BLOOM, all);
+            ObjectIndex.write(INDEX, new ArrayList<>(all), null);
+            RECENT.delete();
+            _index = null;
+            _recent = null;
+        } else {
+            Utils.writeatomic(RECENT, (String.join("\n", _recent) + "\n")
+                              .getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /** Build INDEX from the commits directory, and BLOOM from INDEX,
+     *  unless another process has built them meanwhile. */
+    private static void build() {
+        if (!INDEX.exists()) {
+            List<String> ids = new ArrayList<>();
+            for (String name : Utils.plainFilenamesIn(COMMITS)) {
+                if (name.length() == Utils.UID_LENGTH) {
+                    ids.add(name);
+                }
+            }
+            Bloom.write(BLOOM, ids);
+            ObjectIndex.write(INDEX, ids, null);
+            RECENT.delete();
+        }
+        if (!BLOOM.exists()) {
+            ObjectIndex index = new ObjectIndex(INDEX);
+            List<String> ids = new ArrayList<>();
+            for (int k = 0; k < index.size(); k += 1) {
+                ids.add(index.sha(k));
+            }
+            Bloom.write(BLOOM, ids);
+        }
+    }
+
+    /** Return true iff commit ID exists. */
+    static boolean contains(String id) {
+        load();
+        return _recent.contains(id)
+            || _bloom.mightcontain(id) && _index.find(id) >= 0;
+    }
+
+    /** Return the ids of all commits whose id starts with PREFIX, in
+     *  sorted order. */
+    static List<String> matching(String prefix) {
+        load();
+        List<String> result = _index.matching(prefix);
+        for (String id : _recent) {
+            if (id.startsWith(prefix) && !result.contains(id)) {
+                result.add(id);
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Return the id of the one commit whose id is or starts with
+     *  PREFIX, which must be a non-empty run of hex digits.  Full ids
+     *  are checked against the Bloom filter and the index; shorter ones
+     *  are looked up by binary search in the sorted index, so resolving
+     *  an abbreviated id never reads a commit. */
+    static String resolve(String prefix) {
+        prefix = prefix.toLowerCase();
+        if (!prefix.matches("[0-9a-f]{1," + Utils.UID_LENGTH + "}")) {
+            throw Utils.error("No commit with that id exists.");
+        } else if (prefix.length() == Utils.UID_LENGTH) {
+            if (contains(prefix)) {
+                return prefix;
+            }
+            throw Utils.error("No commit with that id exists.");
+        }
+        List<String> matches = matching(prefix);
+        if (matches.isEmpty()) {
+            throw Utils.error("No commit with that id exists.");
+        } else if (matches.size() > 1) {
+            throw Utils.error("Commit id %s is ambiguous; it matches %d "
+                              + "commits.", prefix, matches.size());
+        }
+        return matches.get(0);
+    }
+
+    /** Open INDEX and read RECENT, first building INDEX or BLOOM, while
+     *  holding the lock, if this repository predates them. */
+    private static void load() {
+        if (_index != null) {
+            return;
+        }
+        if (!INDEX.exists() || !BLOOM.exists()) {
+            Refs.locked(CommitIndex::build);
+        }
+        _index = new ObjectIndex(INDEX);
+        _bloom = new Bloom(BLOOM);
+        _recent = new ArrayList<>();
+        if (RECENT.exists()) {
+            for (String id : Utils.readContentsAsString(RECENT).split("\n")) {
+                if (!id.isEmpty()) {
+                    _recent.add(id);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/** Per-repository settings for Gitlet, the tiny stupid version-control
+ *  system, kept as a properties file in .gitlet/config.
+ *  @author Varun Jadia
+ */
+class Config {
+
+    /** File holding the settings. */
+    static final File CONFIG = new File(".gitlet/config");
+
+    /** Settings read from CONFIG, or null if not yet read. */
+    private static Properties _props;
+
+    /** Return the settings, reading them on first use. */
+    private static Properties props() {
+        if (_props == null) {
+            _props = new Properties();
+            if (CONFIG.exists()) {
+                try (InputStream in = new FileInputStream(CONFIG)) {
+                    _props.load(in);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        }
+        return _props;
+    }
+
+    /** Return the setting KEY, or DFLT if it is not set. */
+    static String get(String key, String dflt) {
+        return props().getProperty(key, dflt);
+    }
+
+    /** Return the setting KEY as an integer, or DFLT if it is not set
+     *  or is not a number. */
+    static int getint(String key, int dflt) {
+        try {
+            return Integer.parseInt(get(key, Integer.toString(dflt)).trim());
+        } catch (NumberFormatException excp) {
+            return dflt;
+        }
+    }
+
+    /** Set KEY to VALUE and write the settings back out. */
+    static void set(String key, String value) {
+        props().setProperty(key, value);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            _props.store(out, "gitlet config");
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.writeatomic(CONFIG, out.toByteArray());
+    }
+}
@@ -0,0 +1,144 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/** Daemon mode for Gitlet, the tiny stupid version-control system.
+ *  java gitlet.Main daemon keeps the repository, and the caches behind it
+ *  (stat cache, commit index and graph, open pack), loaded in one process
+ *  and listens on the Unix domain socket .gitlet/daemon.sock.  While the
+ *  socket exists, every command started in the same directory is
+ *  forwarded to the daemon, which runs commands one at a time in the
+ *  order they arrive; if the daemon has gone away the command simply
+ *  runs in its own process.
+ *
+ *  A request is the argument count as an int followed by each argument
+ *  in modified UTF-8; the reply is the command's output, streamed as it
+ *  is produced and ended by the daemon closing the connection.  The
+ *  reply to daemon stop reports the daemon's commit-cache hits and
+ *  misses.
+ *  @author Varun Jadia
+ */
+class Daemon {
+
+    /** The socket the daemon listens on. */
+    static final File SOCKET = new File(".gitlet/daemon.sock");
+
+    /** True while this process is serving commands. */
+    private static boolean _running;
+
+    /** True once the daemon has been asked to stop. */
+    private static boolean _stopping;
+
+    /** Send the command ARGS to the daemon and copy its output to
+     *  System.out.  RETURN false, having done nothing, iff no daemon is
+     *  listening. */
+    static boolean forward(String... args) {
+        if (_running || !SOCKET.exists()) {
+            return false;
+        }
+        SocketChannel ch;
+        try {
+            ch = SocketChannel.open(UnixDomainSocketAddress.of(
+                    SOCKET.toPath()));
+        } catch (IOException excp) {
+            return false;
+        }
+        try (ch) {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(ch)));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            InputStream in = Channels.newInputStream(ch);
+            byte[] buf = new byte[Blob.CHUNK];
+            for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                System.out.write(buf, 0, n);
+            }
+            System.out.flush();
+            return true;
+        } catch (IOException excp) {
+            throw Utils.error("Lost connection to the Gitlet daemon.");
+        }
+    }
+
+    /** Serve commands on SOCKET until stopped. */
+    static void serve() {
+        if (_running) {
+            throw Utils.error("A Gitlet daemon is already running.");
+        }
+        SOCKET.delete();
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(SOCKET.toPath()));
+            _running = true;
+            _stopping = false;
+            while (!_stopping) {
+                try (SocketChannel ch = server.accept()) {
+                    handle(ch);
+                } catch (IOException excp) {
+                    continue;
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            _running = false;
+            SOCKET.delete();
+        }
+    }
+
+    /** Stop serving once the current command has been answered, and
+     *  answer it with the daemon's commit-cache statistics.  Only the
+     *  daemon itself can be stopped: a daemon stop run in any other
+     *  process finds no daemon running there. */
+    static void stop() {
+        if (!_running) {
+            throw Utils.error("No Gitlet daemon is running.");
+        }
+        _stopping = true;
+        System.out.println(Repo.cachestats());
+    }
+
+    /** Read one command from CH and run it with System.out sent to CH as
+     *  it is written, so long output reaches the client while it is
+     *  produced and stops once the client goes away. */
+    private static void handle(SocketChannel ch) throws IOException {
+        DataInputStream in = new DataInputStream(
+            new BufferedInputStream(Channels.newInputStream(ch)));
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = in.readUTF();
+        }
+
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(new BufferedOutputStream(
+            Channels.newOutputStream(ch), Blob.CHUNK), false));
+        try {
+            if (args.length == 0) {
+                System.out.print("Please enter a command.");
+            } else if (!Main.run(args)) {
+                Main.reload();
+            }
+        } catch (RuntimeException excp) {
+            System.out.print(excp.getMessage());
+            Main.reload();
+        } finally {
+            System.out.flush();
+            System.setOut(stdout);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+/** Binary deltas for Gitlet, the tiny stupid version-control system.
+ *  A delta rebuilds a target byte array from a base one as a sequence of
+ *  COPY (offset, length into the base) and INSERT (literal bytes)
+ *  instructions, preceded by the sizes of the base and the target.
+ *  Matches are found by indexing the base in BLOCK-sized pieces and
+ *  rolling a hash of the same width over the target.
+ *  @author Varun Jadia
+ */
+class Delta {
+
+    /** Width of the blocks matched between base and target. */
+    static final int BLOCK = 16;
+
+    /** Instruction opcode: insert literal bytes. */
+    private static final int INSERT = 0;
+
+    /** Instruction opcode: copy a range of the base. */
+    private static final int COPY = 1;
+
+    /** Multiplier of the rolling hash. */
+    private static final int PRIME = 31;
+
+    /** PRIME raised to BLOCK - 1, for removing a byte from the hash. */
+    private static final int TOP;
+
+    static {
+        int top = 1;
+        for (int i = 1; i < BLOCK; i += 1) {
+            top *= PRIME;
+        }
+        TOP = top;
+    }
+
+    /** Return a delta that turns BASE into TARGET. */
+    static byte[] create(byte[] base, byte[] target) {
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writevarint(out, base.length);
+        writevarint(out, target.length);
+        int pending = 0;
+        int i = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (i < target.length) {
+            Integer at = i + BLOCK <= target.length ? blocks.get(h) : null;
+            if (at != null && same(base, at, target, i, BLOCK)) {
+                int start = at;
+                int len = BLOCK;
+                while (pending > 0 && start > 0
+                        && base[start - 1] == target[i - 1]) {
+                    start -= 1;
+                    i -= 1;
+                    pending -= 1;
+                    len += 1;
+                }
+                while (start + len < base.length && i + len < target.length
+                        && base[start + len] == target[i + len]) {
+                    len += 1;
+                }
+                flushinsert(out, target, i - pending, pending);
+                pending = 0;
+                out.write(COPY);
+                writevarint(out, start);
+                writevarint(out, len);
+                i += len;
+                if (i + BLOCK <= target.length) {
+                    h = hash(target, i);
+                }
+                continue;
+            }
+            if (i + BLOCK < target.length) {
+                h = (h - target[i] * TOP) * PRIME + target[i + BLOCK];
+            }
+            pending += 1;
+            i += 1;
+        }
+        flushinsert(out, target, i - pending, pending);
+        return out.toByteArray();
+    }
+
+    /** Return the result of applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        try {
+            DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(delta));
+            if (readvarint(in) != base.length) {
+                throw Utils.error("Delta does not match its base.");
+            }
+            byte[] result = new byte[readvarint(in)];
+            int pos = 0;
+            for (int op = in.read(); op >= 0; op = in.read()) {
+                if (op == COPY) {
+                    int start = readvarint(in);
+                    int len = readvarint(in);
+                    System.arraycopy(base, start, result, pos, len);
+                    pos += len;
+                } else {
+                    int len = readvarint(in);
+                    in.readFully(result, pos, len);
+                    pos += len;
+                }
+            }
+            if (pos != result.length) {
+                throw Utils.error("Corrupt delta.");
+            }
+            return result;
+        } catch (IOException | IndexOutOfBoundsException excp) {
+            throw Utils.error("Corrupt delta.");
+        }
+    }
+
+    /** Return the hash of the BLOCK bytes of DATA starting at START. */
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int k = 0; k < BLOCK; k += 1) {
+            h = h * PRIME + data[start + k];
+        }
+        return h;
+    }
+
+    /** Return true iff the LEN bytes of A at I equal those of B at J. */
+    private static boolean same(byte[] a, int i, byte[] b, int j, int len) {
+        for (int k = 0; k < len; k += 1) {
+            if (a[i + k] != b[j + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Write an INSERT of the LEN bytes of DATA at START to OUT, if LEN
+     *  is positive. */
+    private static void flushinsert(ByteArrayOutputStream out, byte[] data,
+                                    int start, int len) {
+        if (len > 0) {
+            out.write(INSERT);
+            writevarint(out, len);
+            out.write(data, start, len);
+        }
+    }
+
+    /** Write the non-negative VAL to OUT in 7-bit groups. */
+    private static void writevarint(ByteArrayOutputStream out, int val) {
+        while ((val & ~0x7f) != 0) {
+            out.write((val & 0x7f) | 0x80);
+            val >>>= 7;
+        }
+        out.write(val);
+    }
+
+    /** Return a value written by writevarint, read from IN. */
+    private static int readvarint(DataInputStream in) throws IOException {
+        int val = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = in.readUnsignedByte();
+            val |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return val;
+            }
+        }
+    }
+}
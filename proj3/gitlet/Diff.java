@@ -0,0 +1,271 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+
+/** Line diffs for Gitlet, the tiny stupid version-control system.
+ *  Lines are first interned, so that comparing two lines is comparing two
+ *  ints, and then matched by Myers' O(ND) algorithm in its linear-space
+ *  form: the middle snake of the edit graph is found by searching from
+ *  both ends at once, and the halves on either side of it are diffed
+ *  recursively.  Common prefixes and suffixes are stripped first, so
+ *  typical edits cost little more than a scan of the two files.  As in
+ *  git, a search for a middle snake that passes a cost of about the
+ *  square root of the input length (but at least MINCOST) gives up and
+ *  splits at the furthest point it reached, so files that share little
+ *  get a valid but not necessarily shortest diff in near-linear time.
+ *
+ *  Differences are shown as unified diffs with CONTEXT lines of context
+ *  around each change.
+ *  @author Varun Jadia
+ */
+class Diff {
+
+    /** Lines of unchanged text shown around each change. */
+    static final int CONTEXT = 3;
+
+    /** Least edit cost at which the search for a middle snake may stop
+     *  short of the shortest edit script. */
+    static final int MINCOST = 256;
+
+    /** Kinds of line in an edit script. */
+    private static final int SAME = 0, DELETE = 1, INSERT = 2;
+
+    /** The sequences being diffed. */
+    private final int[] _a, _b;
+
+    /** Result of match, filled in as snakes are found. */
+    private final int[] _match;
+
+    /** Furthest reaching x on each diagonal, searching forward from the
+     *  start and backward from the end, offset by _center. */
+    private final int[] _vf, _vb;
+
+    /** Index of diagonal 0 in _vf and _vb. */
+    private final int _center;
+
+    /** Edit cost past which a middle snake search gives up. */
+    private final int _maxcost;
+
+    /** Return the lines of TEXT, each with its terminating newline; the
+     *  last line lacks one if TEXT does not end with a newline. */
+    static List<String> lines(String text) {
+        List<String> result = new ArrayList<>();
+        int start = 0;
+        for (int nl = text.indexOf('\n'); nl >= 0;
+             nl = text.indexOf('\n', start)) {
+            result.add(text.substring(start, nl + 1));
+            start = nl + 1;
+        }
+        if (start < text.length()) {
+            result.add(text.substring(start));
+        }
+        return result;
+    }
+
+    /** Return TEXTS with each line replaced by an id, equal lines
+     *  getting equal ids across all of TEXTS. */
+    @SafeVarargs
+    static int[][] intern(List<String>... texts) {
+        HashMap<String, Integer> ids = new HashMap<>();
+        int[][] result = new int[texts.length][];
+        for (int t = 0; t < texts.length; t += 1) {
+            result[t] = new int[texts[t].size()];
+            for (int i = 0; i < result[t].length; i += 1) {
+                Integer id = ids.putIfAbsent(texts[t].get(i), ids.size());
+                result[t][i] = id == null ? ids.size() - 1 : id;
+            }
+        }
+        return result;
+    }
+
+    /** Return, for each element of A, the index of the element of B it is
+     *  matched with in a shortest edit script turning A into B, or -1 if
+     *  it is deleted.  Matched indices increase along A. */
+    static int[] match(int[] a, int[] b) {
+        int[] match = new int[a.length];
+        Arrays.fill(match, -1);
+        int size = 2 * (a.length + b.length) + 3;
+        new Diff(a, b, match, size).diff(0, a.length, 0, b.length);
+        return match;
+    }
+
+    /** Append to OUT the unified diff turning OLDTEXT, the contents of
+     *  PATH in the old version, into NEWTEXT, its contents in the new.  A
+     *  null text means the file is absent from that version.  Nothing is
+     *  appended if the two texts are equal. */
+    static void unified(StringBuilder out, String path, String oldtext,
+                        String newtext) {
+        if (Objects.equals(oldtext, newtext)) {
+            return;
+        }
+        List<String> a = lines(oldtext == null ? "" : oldtext);
+        List<String> b = lines(newtext == null ? "" : newtext);
+        int[][] ids = intern(a, b);
+        int[] match = match(ids[0], ids[1]);
+
+        int[] kind = new int[a.size() + b.size()];
+        int[] apos = new int[kind.length + 1], bpos = new int[kind.length + 1];
+        int nops = 0;
+        for (int i = 0, j = 0; i < a.size() || j < b.size(); nops += 1) {
+            apos[nops] = i;
+            bpos[nops] = j;
+            if (i < a.size() && match[i] == j) {
+                kind[nops] = SAME;
+                i += 1;
+                j += 1;
+            } else if (i < a.size() && match[i] < 0) {
+                kind[nops] = DELETE;
+                i += 1;
+            } else {
+                kind[nops] = INSERT;
+                j += 1;
+            }
+        }
+        apos[nops] = a.size();
+        bpos[nops] = b.size();
+
+        out.append("diff --git a/").append(path).append(" b/").append(path)
+            .append('\n');
+        out.append("--- ").append(oldtext == null ? "/dev/null" : "a/" + path)
+            .append('\n');
+        out.append("+++ ").append(newtext == null ? "/dev/null" : "b/" + path)
+            .append('\n');
+        for (int k = 0; k < nops; ) {
+            if (kind[k] == SAME) {
+                k += 1;
+                continue;
+            }
+            int start = Math.max(0, k - CONTEXT);
+            int last = k;
+            for (int j = k; j < nops && j - last <= 2 * CONTEXT + 1; j += 1) {
+                if (kind[j] != SAME) {
+                    last = j;
+                }
+            }
+            int end = Math.min(nops, last + 1 + CONTEXT);
+            out.append("@@ -").append(range(apos[start], apos[end]))
+                .append(" +").append(range(bpos[start], bpos[end]))
+                .append(" @@\n");
+            for (int op = start; op < end; op += 1) {
+                String line = kind[op] == INSERT
+                    ? b.get(bpos[op]) : a.get(apos[op]);
+                out.append(kind[op] == SAME ? ' '
+                           : kind[op] == DELETE ? '-' : '+').append(line);
+                if (!line.endsWith("\n")) {
+                    out.append("\n\\ No newline at end of file\n");
+                }
+            }
+            k = end;
+        }
+    }
+
+    /** Return the hunk-header form of the lines [FROM, TO) of a file. */
+    private static String range(int from, int to) {
+        if (to - from == 1) {
+            return Integer.toString(to);
+        }
+        return (to == from ? from : from + 1) + "," + (to - from);
+    }
+
+    /** A diff of A against B recording matches in MATCH, with diagonal
+     *  arrays of SIZE entries. */
+    private Diff(int[] a, int[] b, int[] match, int size) {
+        _a = a;
+        _b = b;
+        _match = match;
+        _vf = new int[size];
+        _vb = new int[size];
+        _center = size / 2;
+        _maxcost = Math.max(MINCOST, (int) Math.sqrt(size));
+    }
+
+    /** Match _a[ALO..AHI) against _b[BLO..BHI). */
+    private void diff(int alo, int ahi, int blo, int bhi) {
+        while (alo < ahi && blo < bhi && _a[alo] == _b[blo]) {
+            _match[alo++] = blo++;
+        }
+        while (alo < ahi && blo < bhi && _a[ahi - 1] == _b[bhi - 1]) {
+            _match[--ahi] = --bhi;
+        }
+        if (alo == ahi || blo == bhi) {
+            return;
+        }
+        int[] snake = middlesnake(alo, ahi, blo, bhi);
+        diff(alo, snake[0], blo, snake[1]);
+        for (int x = snake[0], y = snake[1]; x < snake[2]; x += 1, y += 1) {
+            _match[x] = y;
+        }
+        diff(snake[2], ahi, snake[3], bhi);
+    }
+
+    /** Return the middle snake of a shortest edit script turning
+     *  _a[ALO..AHI) into _b[BLO..BHI), as its start x and y and end x and
+     *  y.  The ranges must be non-empty and differ at both ends.  If the
+     *  search gets too costly, RETURN instead an empty snake at the
+     *  furthest point reached from the start. */
+    private int[] middlesnake(int alo, int ahi, int blo, int bhi) {
+        int n = ahi - alo, m = bhi - blo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int c = _center;
+        _vf[c + 1] = 0;
+        _vb[c + 1] = 0;
+        for (int d = 0; d <= (n + m + 1) / 2; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || k != d && _vf[c + k - 1] < _vf[c + k + 1]
+                    ? _vf[c + k + 1] : _vf[c + k - 1] + 1;
+                int y = x - k;
+                int x0 = x, y0 = y;
+                while (x < n && y < m && _a[alo + x] == _b[blo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                _vf[c + k] = x;
+                int kr = delta - k;
+                if (odd && kr >= -(d - 1) && kr <= d - 1
+                        && x + _vb[c + kr] >= n) {
+                    return new int[] {alo + x0, blo + y0, alo + x, blo + y};
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || k != d && _vb[c + k - 1] < _vb[c + k + 1]
+                    ? _vb[c + k + 1] : _vb[c + k - 1] + 1;
+                int y = x - k;
+                int x0 = x, y0 = y;
+                while (x < n && y < m
+                       && _a[ahi - 1 - x] == _b[bhi - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                _vb[c + k] = x;
+                int kf = delta - k;
+                if (!odd && kf >= -d && kf <= d && x + _vf[c + kf] >= n) {
+                    return new int[] {ahi - x, bhi - y, ahi - x0, bhi - y0};
+                }
+            }
+            if (d >= _maxcost) {
+                return furthest(d, n, m, alo, blo);
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /** Return an empty snake at the point that has gone furthest through
+     *  the edit graph of _a[ALO..ALO+N) and _b[BLO..BLO+M) after a
+     *  forward search of cost D. */
+    private int[] furthest(int d, int n, int m, int alo, int blo) {
+        int bestx = 0, besty = 0;
+        for (int k = -d; k <= d; k += 2) {
+            int x = _vf[_center + k], y = x - k;
+            if (x <= n && y >= 0 && y <= m && x + y > bestx + besty) {
+                bestx = x;
+                besty = y;
+            }
+        }
+        return new int[] {alo + bestx, blo + besty, alo + bestx, blo + besty};
+    }
+}
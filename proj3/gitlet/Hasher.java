@@ -0,0 +1,123 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/** Parallel working-tree hashing for Gitlet, the tiny stupid
+ *  version-control system.  Files are hashed through the StatCache,
+ *  hashed and staged, or written out from their blobs, on a fork-join
+ *  pool of core.workers threads (by default, one per available
+ *  processor); results, and the first failure if any, are gathered in
+ *  filename order, so callers see the same answer however the work was
+ *  scheduled.
+ *
+ *  Blobs being written hold what they keep on the heap against a budget
+ *  of core.inflightbytes (by default INFLIGHT): a chunk for the objects
+ *  that are streamed, and the whole object for the deltas in a pack that
+ *  must be rebuilt in memory.  A checkout of many large deltified files
+ *  thus never has much more than the budget of them in memory at once,
+ *  while streamed files of any size are written side by side.
+ *  @author Varun Jadia
+ */
+class Hasher {
+
+    /** Batches smaller than this are hashed on the calling thread. */
+    private static final int MINPARALLEL = 4;
+
+    /** Default bound on the bytes of blobs being written at once. */
+    static final int INFLIGHT = 64 << 20;
+
+    /** Return the number of hashing threads this repository uses. */
+    static int workers() {
+        return Math.max(1, Config.getint("core.workers",
+                Runtime.getRuntime().availableProcessors()));
+    }
+
+    /** Return a map from each of FILENAMES to the blob sha of that
+     *  working file, in filename order. */
+    static TreeMap<String, String> hash(Collection<String> filenames) {
+        return run(filenames, StatCache::hash);
+    }
+
+    /** Copy each of FILENAMES into the staging area, hashing it on the
+     *  way, and return a map from each to its staged blob, in filename
+     *  order. */
+    static TreeMap<String, Blob> stage(Collection<String> filenames) {
+        return run(filenames, Blob::stage);
+    }
+
+    /** Write each blob in FILES, a map from working filenames to blob
+     *  shas, to its file, creating directories as needed. */
+    static void materialize(Map<String, String> files) {
+        if (files.isEmpty()) {
+            return;
+        }
+        int budget = Math.max(Blob.CHUNK,
+                              Config.getint("core.inflightbytes", INFLIGHT));
+        Semaphore inflight = new Semaphore(budget);
+        for (String filename : files.keySet()) {
+            Worktree.create(filename);
+        }
+        run(files.keySet(), filename -> {
+            String sha = files.get(filename);
+            int cost = (int) Math.min(budget, ObjectStore.buffered(sha));
+            inflight.acquireUninterruptibly(cost);
+            try {
+                ObjectStore.copy(sha, new File(filename));
+            } finally {
+                inflight.release(cost);
+            }
+            return sha;
+        });
+    }
+
+    /** Return a map from each of FILENAMES to the result of applying
+     *  WORK to it, in filename order. */
+    private static <T> TreeMap<String, T> run(Collection<String> filenames,
+                                              Function<String, T> work) {
+        TreeMap<String, T> result = new TreeMap<>();
+        List<String> names = new ArrayList<>(new TreeSet<>(filenames));
+        int workers = workers();
+        if (workers == 1 || names.size() < MINPARALLEL) {
+            for (String filename : names) {
+                result.put(filename, work.apply(filename));
+            }
+            return result;
+        }
+
+        List<Callable<T>> tasks = new ArrayList<>();
+        for (String filename : names) {
+            tasks.add(() -> work.apply(filename));
+        }
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        try {
+            List<Future<T>> results = pool.invokeAll(tasks);
+            for (int i = 0; i < names.size(); i += 1) {
+                result.put(names.get(i), results.get(i).get());
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw Utils.error("Interrupted while working on files.");
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalArgumentException(cause.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+        return result;
+    }
+}
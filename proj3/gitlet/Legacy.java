@@ -0,0 +1,154 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/** Reader for repositories written by the original Gitlet, which saved
+ *  its Repo, Commit and Blob objects with Java serialization and kept
+ *  every file's contents inside the blobs of each commit.  Those classes
+ *  are no longer serializable, so a serialized stream naming one of them
+ *  is read into the matching shim class below instead.
+ *  @author Varun Jadia
+ */
+class Legacy {
+
+    /** Shim classes standing in for the original classes, by class.
+     *  Each has its original's serialVersionUID. */
+    private static final HashMap<String, Class<?>> SHIMS = new HashMap<>();
+
+    static {
+        SHIMS.put("gitlet.Repo", OldRepo.class);
+        SHIMS.put("gitlet.Commit", OldCommit.class);
+        SHIMS.put("gitlet.Blob", OldBlob.class);
+    }
+
+    /** The original Repo's fields. */
+    static class OldRepo implements Serializable {
+        /** Serialization id of the original class. */
+        private static final long serialVersionUID = -937006021688944619L;
+        /** Sha of the head commit. */
+        String _lastcommit;
+        /** Staged blobs by file name. */
+        HashMap<String, OldBlob> _stagefiles;
+        /** Head commits by branch name. */
+        HashMap<String, String> _branchmap;
+        /** Current branch. */
+        String _currbranch;
+        /** Files staged for removal. */
+        ArrayList<String> _rmfilenames;
+        /** Every commit id. */
+        HashSet<String> _commitids;
+        /** True iff a merge is being committed. */
+        Boolean _merge;
+        /** Given parent of the merge being committed. */
+        String _lastmerge;
+    }
+
+    /** The original Commit's fields. */
+    static class OldCommit implements Serializable {
+        /** Serialization id of the original class. */
+        private static final long serialVersionUID = 6602495978673535403L;
+        /** Timestamp. */
+        String _timestamp;
+        /** Log message. */
+        String _logmsg;
+        /** Unused reference to the repository. */
+        OldRepo _ref;
+        /** Unused id. */
+        String _uid;
+        /** Blobs by file name, each holding the file's contents. */
+        HashMap<String, OldBlob> _files;
+        /** Unused tracked files. */
+        HashMap<String, String> _trackedfiles;
+        /** Parent id. */
+        String _parenthash;
+        /** Merge parent id. */
+        String _mergeparenthash;
+        /** Copy of the contents of every blob. */
+        ArrayList<String> _filecontents;
+    }
+
+    /** The original Blob's fields. */
+    static class OldBlob implements Serializable {
+        /** Serialization id of the original class. */
+        private static final long serialVersionUID = -2808015790340095065L;
+        /** File name. */
+        String _filename;
+        /** Sha of the name and contents. */
+        String _shacode;
+        /** Contents of the file. */
+        String _contents;
+    }
+
+    /** An object stream reading the original classes as shims. */
+    private static class Input extends ObjectInputStream {
+
+        /** A stream reading objects from IN. */
+        Input(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor()
+            throws IOException, ClassNotFoundException {
+            ObjectStreamClass desc = super.readClassDescriptor();
+            Class<?> shim = SHIMS.get(desc.getName());
+            return shim == null ? desc : ObjectStreamClass.lookup(shim);
+        }
+    }
+
+    /** Return the object serialized in BYTES by the original Gitlet, as
+     *  a shim. */
+    static Object read(byte[] bytes) {
+        try (Input in = new Input(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        } catch (IOException | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return OLD as a commit, storing the contents of its files in the
+     *  object store. */
+    static Commit convert(OldCommit old) {
+        Commit comm = new Commit(old._logmsg, old._timestamp, null,
+                                 old._parenthash, old._mergeparenthash);
+        HashMap<String, String> files = new HashMap<>();
+        if (old._files != null) {
+            for (Map.Entry<String, OldBlob> e : old._files.entrySet()) {
+                files.put(e.getKey(), store(e.getValue()));
+            }
+        }
+        comm.setfiles(files);
+        return comm;
+    }
+
+    /** Store the contents of BLOB in the object store.  RETURN its sha. */
+    static String store(OldBlob blob) {
+        ObjectStore.put(blob._shacode,
+                        blob._contents.getBytes(StandardCharsets.UTF_8));
+        return blob._shacode;
+    }
+
+    /** Rewrite every commit in the commits directory that is still in a
+     *  Java-serialized format in the current one. */
+    static void convertcommits() {
+        ObjectStore.OBJECTS.mkdir();
+        for (String name : Utils.plainFilenamesIn(CommitIndex.COMMITS)) {
+            File file = new File(CommitIndex.COMMITS, name);
+            if (name.length() == Utils.UID_LENGTH
+                    && Utils.isserialized(Utils.readContents(file))) {
+                Commit.read(file).write(file);
+            }
+        }
+    }
+}
@@ -1,10 +1,14 @@
 package gitlet;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Varun Jadia
@@ -21,9 +25,19 @@ public class Main {
     public static void main(String... args) throws IOException {
         if (args == null || args.length == 0) {
             System.out.print("Please enter a command.");
-            System.exit(0);
+            return;
+        }
+        if (Daemon.forward(args)) {
+            return;
         }
         _repo = load();
+        run(args);
+    }
+
+    /** Run the command ARGS against the loaded repository, then save the
+     *  repository unless the command failed.  RETURN false iff the
+     *  command failed, leaving the repository in memory unsaved. */
+    static boolean run(String... args) {
         String command = args[0];
         try {
             switch (command) {
@@ -31,7 +45,10 @@ public class Main {
                 _repo = init();
                 break;
             case "add":
-                _repo.add(args[1]);
+                if (args.length < 2) {
+                    throw Utils.error("Incorrect operands.");
+                }
+                _repo.add(Arrays.copyOfRange(args, 1, args.length));
                 break;
             case "commit":
                 String timestamp = retimestamp();
@@ -41,13 +58,11 @@ public class Main {
                 checkouthelper(args);
                 break;
             case "log":
-                _repo.log();
+            case "global-log":
+                log(args);
                 break;
             case "find":
-                _repo.find(args[1]);
-                break;
-            case "global-log":
-                _repo.globallog();
+                find(args);
                 break;
             case "rm":
                 _repo.rm(args[1]);
@@ -67,16 +82,52 @@ public class Main {
             case "reset":
                 _repo.reset(args[1]);
                 break;
+            case "diff":
+                diff(args);
+                break;
+            case "gc":
+            case "repack":
+                _repo.gc();
+                break;
+            case "config":
+                config(args);
+                break;
+            case "daemon":
+                daemon(args);
+                break;
             default:
                 System.out.print("No command with that name exists.");
                 break;
             }
+        } catch (GitletException excp) {
+            System.out.print(excp.getMessage());
+            return false;
         } catch (IndexOutOfBoundsException e) {
             System.out.print("Incorrect operands.");
+            return false;
         } catch (NullPointerException a) {
+            if (_repo != null) {
+                throw a;
+            }
             System.out.print("Not in an initialized Gitlet directory.");
+            return false;
         }
-        save(_repo);
+        try {
+            save(_repo);
+        } catch (GitletException excp) {
+            System.out.print(excp.getMessage());
+            return false;
+        }
+        if (_repo != null) {
+            StatCache.save();
+        }
+        return true;
+    }
+
+    /** Read the repository back from disk, dropping any changes made to
+     *  it in memory since it was last saved. */
+    static void reload() {
+        _repo = load();
     }
 
     /**helper for finding timestamp.RETURN.*/
@@ -95,23 +146,139 @@ public class Main {
         } else if (args.length == 4 && args[2].equals("--")) {
             _repo.checkout2(args[1], args[3]);
         } else {
-            System.out.print("Incorrect operands.");
-            System.exit(0);
+            throw Utils.error("Incorrect operands.");
+        }
+    }
+
+    /** java gitlet.Main log|global-log [-n N] [--since DATE]
+     *  [--oneline].  DATE is an ISO date or date and time, taken in the
+     *  local time zone unless it gives an offset.  ARGS. */
+    private static void log(String... args) {
+        int limit = Integer.MAX_VALUE;
+        long since = Long.MIN_VALUE;
+        boolean oneline = false;
+        for (int i = 1; i < args.length; i += 1) {
+            if (args[i].equals("--oneline")) {
+                oneline = true;
+            } else if (args[i].equals("-n") && i + 1 < args.length
+                       && args[i + 1].matches("\\d{1,9}")) {
+                i += 1;
+                limit = Integer.parseInt(args[i]);
+            } else if (args[i].equals("--since") && i + 1 < args.length) {
+                i += 1;
+                since = parsedate(args[i]);
+            } else {
+                throw Utils.error("Incorrect operands.");
+            }
+        }
+        if (args[0].equals("log")) {
+            _repo.log(limit, since, oneline);
+        } else {
+            _repo.globallog(limit, since, oneline);
+        }
+    }
+
+    /** Return the seconds since the epoch denoted by DATE, an ISO date,
+     *  local date and time, or date and time with an offset. */
+    private static long parsedate(String date) {
+        try {
+            return LocalDate.parse(date).atStartOfDay(ZoneId.systemDefault())
+                .toEpochSecond();
+        } catch (DateTimeParseException excp) {
+            try {
+                return LocalDateTime.parse(date)
+                    .atZone(ZoneId.systemDefault()).toEpochSecond();
+            } catch (DateTimeParseException excp2) {
+                try {
+                    return OffsetDateTime.parse(date).toEpochSecond();
+                } catch (DateTimeParseException excp3) {
+                    throw Utils.error("Invalid date: %s.", date);
+                }
+            }
+        }
+    }
+
+    /** java gitlet.Main find [--substring | --token] [commit message].
+     *  ARGS. */
+    private static void find(String... args) {
+        if (args.length == 2) {
+            _repo.find(args[1], MessageIndex.Match.EXACT);
+        } else if (args.length == 3 && args[1].equals("--substring")) {
+            _repo.find(args[2], MessageIndex.Match.SUBSTRING);
+        } else if (args.length == 3 && args[1].equals("--token")) {
+            _repo.find(args[2], MessageIndex.Match.TOKEN);
+        } else {
+            throw Utils.error("Incorrect operands.");
+        }
+    }
+
+    /** java gitlet.Main diff [--staged | [commit id] [commit id]].
+     *  ARGS. */
+    private static void diff(String... args) {
+        if (args.length == 1) {
+            _repo.diff();
+        } else if (args.length == 2 && (args[1].equals("--staged")
+                                        || args[1].equals("--cached"))) {
+            _repo.diffstaged();
+        } else if (args.length == 3) {
+            _repo.diff(args[1], args[2]);
+        } else {
+            throw Utils.error("Incorrect operands.");
+        }
+    }
+
+    /** java gitlet.Main config [key] [value]: print or set a setting.
+     *  ARGS. */
+    private static void config(String... args) {
+        if (_repo == null) {
+            throw Utils.error("Not in an initialized Gitlet directory.");
+        }
+        if (args.length == 2) {
+            String value = Config.get(args[1], null);
+            if (value != null) {
+                System.out.println(value);
+            }
+        } else if (args.length == 3) {
+            if (args[1].equals("core.compression")
+                    && Codec.byname(args[2]) == null) {
+                throw Utils.error("No such compression codec.");
+            }
+            if (args[1].equals("core.compressionlevel")
+                    && (!args[2].matches("-?\\d{1,2}")
+                        || !Codec.validlevel(Integer.parseInt(args[2])))) {
+                throw Utils.error("Invalid compression level.");
+            }
+            Config.set(args[1], args[2]);
+        } else {
+            throw Utils.error("Incorrect operands.");
+        }
+    }
+
+    /** java gitlet.Main daemon [stop]: serve this repository's commands
+     *  from this process until stopped, or stop the running daemon.
+     *  ARGS. */
+    private static void daemon(String... args) {
+        if (args.length == 2 && args[1].equals("stop")) {
+            Daemon.stop();
+        } else if (args.length != 1) {
+            throw Utils.error("Incorrect operands.");
+        } else if (_repo == null) {
+            throw Utils.error("Not in an initialized Gitlet directory.");
+        } else {
+            Daemon.serve();
         }
     }
 
     /** initializes a new gitlet directory. RETURN */
     private static Repo init() {
         File directory = new File(".gitlet/");
-        if (!directory.exists()) {
-            directory.mkdirs();
-            Repo newrep = new Repo();
-            return newrep.init();
-        } else {
-            System.out.print("A Gitlet version-control system"
+        if (directory.exists()) {
+            throw Utils.error("A Gitlet version-control system"
                     + " already exists in the current directory.");
-            return null;
         }
+        directory.mkdirs();
+        Repo newrep = new Repo();
+        return newrep.init();
     }
 
     /** helper for loading an initialized
@@ -120,7 +287,7 @@ public class Main {
         File file = new File(".gitlet" + File.separator + "repo");
         Repo repo = null;
         if (file.exists()) {
-            repo = Utils.readObject(file, Repo.class);
+            repo = Repo.decode(Utils.readContents(file));
         }
         return repo;
     }
@@ -130,13 +297,6 @@ public class Main {
         if (repo == null) {
             return;
         }
-        try {
-            File f = new File(".gitlet/repo");
-            ObjectOutputStream out =
-                    new ObjectOutputStream(new FileOutputStream(f));
-            out.writeObject(repo);
-        } catch (IOException e) {
-            System.out.println(e.getMessage());
-        }
+        repo.save(new File(".gitlet/repo"));
     }
 }
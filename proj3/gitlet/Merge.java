@@ -0,0 +1,116 @@
+package gitlet;
+
+import java.util.List;
+
+/** Three-way line merges for Gitlet, the tiny stupid version-control
+ *  system, in the manner of diff3.  The current and given versions of a
+ *  file are each diffed against their split-point version, and the lines
+ *  of the split point matched in both diffs divide the three versions
+ *  into stable chunks, kept as they are, and unstable ones.  An unstable
+ *  chunk changed on one side only takes that side's lines; one changed
+ *  identically on both sides takes either; any other becomes a conflict
+ *  region holding just that chunk of the two versions.
+ *  @author Varun Jadia
+ */
+class Merge {
+
+    /** Marker opening a conflict region. */
+    static final String OURS = "<<<<<<< HEAD\n";
+
+    /** Marker between the two sides of a conflict region. */
+    static final String SEPARATOR = "=======\n";
+
+    /** Marker closing a conflict region. */
+    static final String THEIRS = ">>>>>>>\n";
+
+    /** The merged text. */
+    private final StringBuilder _text = new StringBuilder();
+
+    /** True iff the merge has a conflict region. */
+    private boolean _conflicted;
+
+    /** Lines of the split-point, current and given versions. */
+    private final List<String> _base, _ours, _theirs;
+
+    /** The merge of OURS and THEIRS, two versions of the text BASE. */
+    Merge(String base, String ours, String theirs) {
+        _base = Diff.lines(base);
+        _ours = Diff.lines(ours);
+        _theirs = Diff.lines(theirs);
+        int[][] ids = Diff.intern(_base, _ours, _theirs);
+        int[] toours = Diff.match(ids[0], ids[1]);
+        int[] totheirs = Diff.match(ids[0], ids[2]);
+
+        int o = 0, a = 0, b = 0;
+        while (o < _base.size() || a < _ours.size() || b < _theirs.size()) {
+            int stable = 0;
+            while (o + stable < _base.size()
+                   && toours[o + stable] == a + stable
+                   && totheirs[o + stable] == b + stable) {
+                stable += 1;
+            }
+            if (stable > 0) {
+                append(_base, o, o + stable);
+                o += stable;
+                a += stable;
+                b += stable;
+                continue;
+            }
+            int next = o;
+            while (next < _base.size()
+                   && (toours[next] < 0 || totheirs[next] < 0)) {
+                next += 1;
+            }
+            int anext = next < _base.size() ? toours[next] : _ours.size();
+            int bnext =
+                next < _base.size() ? totheirs[next] : _theirs.size();
+            chunk(o, next, a, anext, b, bnext);
+            o = next;
+            a = anext;
+            b = bnext;
+        }
+    }
+
+    /** Return the merged text. */
+    String text() {
+        return _text.toString();
+    }
+
+    /** Return true iff the merged text has a conflict region. */
+    boolean conflicted() {
+        return _conflicted;
+    }
+
+    /** Merge the unstable chunk made of lines [O0, O1) of the split
+     *  point, [A0, A1) of the current version and [B0, B1) of the given
+     *  one. */
+    private void chunk(int o0, int o1, int a0, int a1, int b0, int b1) {
+        boolean oursame = same(_base, o0, o1, _ours, a0, a1);
+        boolean theirsame = same(_base, o0, o1, _theirs, b0, b1);
+        if (oursame) {
+            append(_theirs, b0, b1);
+        } else if (theirsame || same(_ours, a0, a1, _theirs, b0, b1)) {
+            append(_ours, a0, a1);
+        } else {
+            _conflicted = true;
+            _text.append(OURS);
+            append(_ours, a0, a1);
+            _text.append(SEPARATOR);
+            append(_theirs, b0, b1);
+            _text.append(THEIRS);
+        }
+    }
+
+    /** Return true iff lines [X0, X1) of X equal lines [Y0, Y1) of Y. */
+    private static boolean same(List<String> x, int x0, int x1,
+                                List<String> y, int y0, int y1) {
+        return x.subList(x0, x1).equals(y.subList(y0, y1));
+    }
+
+    /** Append lines [FROM, TO) of LINES to the merged text. */
+    private void append(List<String> lines, int from, int to) {
+        for (int i = from; i < to; i += 1) {
+            _text.append(lines.get(i));
+        }
+    }
+}
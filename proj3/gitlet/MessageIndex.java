@@ -0,0 +1,365 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/** Index of commit messages for Gitlet, the tiny stupid version-control
+ *  system, so that find never reads a commit.
+ *
+ *  .gitlet/messages is an append-only log holding, for each commit in the
+ *  order it was made, its raw id, the length of its message and the
+ *  message in UTF-8.  .gitlet/messages.idx is a memory-mapped inverted
+ *  index over a prefix of that log: "GMIX", a version, the length of the
+ *  log it covers, the number of tokens, a table of the positions of the
+ *  token entries in token order, and then each entry: the token, the
+ *  number of messages containing it, and the log offsets of those
+ *  messages.  Records appended after the covered prefix are scanned
+ *  directly, and folded into a rewritten index once MAXRECENT of them
+ *  have built up.
+ *
+ *  A token is a maximal run of letters and digits, lower-cased.
+ *  @author Varun Jadia
+ */
+class MessageIndex {
+
+    /** The message log. */
+    static final File LOG = new File(".gitlet/messages");
+
+    /** The inverted index over LOG. */
+    static final File INDEX = new File(".gitlet/messages.idx");
+
+    /** Kinds of query: whole message, part of a message, or tokens. */
+    enum Match { EXACT, SUBSTRING, TOKEN }
+
+    /** Magic bytes starting LOG. */
+    private static final byte[] LOGMAGIC = {'G', 'M', 'S', 'G'};
+
+    /** Magic bytes starting INDEX. */
+    private static final byte[] MAGIC = {'G', 'M', 'I', 'X'};
+
+    /** Format version of both files. */
+    private static final int VERSION = 1;
+
+    /** Length of the header of LOG. */
+    private static final int HEADER = LOGMAGIC.length + 2;
+
+    /** Position of the token count in INDEX. */
+    private static final int COUNTPOS = MAGIC.length + 2 + 8;
+
+    /** Position of the entry table in INDEX. */
+    private static final int TABLEPOS = COUNTPOS + 4;
+
+    /** Length of a raw commit id. */
+    private static final int SHALEN = ObjectIndex.SHALEN;
+
+    /** The mapped LOG, or null if not yet mapped. */
+    private static MappedByteBuffer _log;
+
+    /** The mapped INDEX. */
+    private static MappedByteBuffer _index;
+
+    /** Number of tokens in INDEX. */
+    private static int _ntokens;
+
+    /** Offsets of the complete records of LOG not covered by INDEX. */
+    private static List<Long> _tail;
+
+    /** Offset just past the last complete record of LOG. */
+    private static long _end;
+
+    /** Record that commit ID has message MSG.  Other processes may be
+     *  committing too, so this remaps the log while holding the lock.  A
+     *  log built afresh from the commit graph already holds ID.  A commit
+     *  made again, with the same message and parent and so the same id,
+     *  is simply logged again; find reports it once. */
+    static void add(String id, String msg) {
+        Refs.locked(() -> {
+            _log = null;
+            if (!LOG.exists()) {
+                load();
+                return;
+            }
+            load();
+            append(Arrays.asList(record(id, msg)));
+            if (_tail.size() >= CommitIndex.MAXRECENT) {
+                writeindex();
+            }
+        });
+    }
+
+    /** Return the ids of the commits whose messages match QUERY as
+     *  directed by HOW, oldest first.  EXACT matches the whole message,
+     *  SUBSTRING any part of it, and TOKEN every token of QUERY in any
+     *  order. */
+    static List<String> find(String query, Match how) {
+        load();
+        List<String> tokens;
+        Predicate<String> test;
+        switch (how) {
+        case EXACT:
+            tokens = tokens(query);
+            test = query::equals;
+            break;
+        case SUBSTRING:
+            tokens = tokens(query.replaceAll("^[\\p{L}\\p{N}]+|"
+                                             + "[\\p{L}\\p{N}]+$", ""));
+            test = msg -> msg.contains(query);
+            break;
+        default:
+            List<String> words = tokens(query);
+            tokens = words;
+            test = msg -> tokens(msg).containsAll(words);
+            if (tokens.isEmpty()) {
+                return new ArrayList<>();
+            }
+            break;
+        }
+
+        List<Long> candidates = null;
+        for (String token : tokens) {
+            List<Long> postings = postings(token);
+            if (candidates == null || postings.size() < candidates.size()) {
+                candidates = postings;
+            }
+        }
+        if (candidates == null) {
+            candidates = new ArrayList<>();
+            for (long off = HEADER; off < covered(); off = next(off)) {
+                candidates.add(off);
+            }
+        }
+        candidates.addAll(_tail);
+
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        for (long off : candidates) {
+            if (test.test(message(off))) {
+                result.add(id(off));
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Return the tokens of MSG, in order, without repeats. */
+    static List<String> tokens(String msg) {
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        for (String token : msg.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                result.add(token);
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Return the offsets in LOG, as indexed, of the messages containing
+     *  TOKEN. */
+    private static List<Long> postings(String token) {
+        List<Long> result = new ArrayList<>();
+        int lo = 0, hi = _ntokens;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = token(mid).compareTo(token);
+            if (cmp == 0) {
+                int pos = entry(mid);
+                pos += 4 + _index.getInt(pos);
+                int count = _index.getInt(pos);
+                for (int i = 0; i < count; i += 1) {
+                    result.add(_index.getLong(pos + 4 + i * 8));
+                }
+                break;
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return result;
+    }
+
+    /** Return the position in INDEX of entry K. */
+    private static int entry(int k) {
+        return _index.getInt(TABLEPOS + k * 4);
+    }
+
+    /** Return the token of entry K. */
+    private static String token(int k) {
+        int pos = entry(k);
+        byte[] bytes = new byte[_index.getInt(pos)];
+        _index.get(pos + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Return the length of LOG covered by INDEX. */
+    private static long covered() {
+        return _index.getLong(MAGIC.length + 2);
+    }
+
+    /** Return the id in the record of LOG at OFF. */
+    private static String id(long off) {
+        byte[] raw = new byte[SHALEN];
+        _log.get((int) off, raw);
+        return Utils.hex(raw);
+    }
+
+    /** Return the message in the record of LOG at OFF. */
+    private static String message(long off) {
+        byte[] bytes = new byte[_log.getInt((int) off + SHALEN)];
+        _log.get((int) off + SHALEN + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Return the offset of the record following the one at OFF in LOG,
+     *  or -1 if the record at OFF is incomplete. */
+    private static long next(long off) {
+        if (off + SHALEN + 4 > _log.capacity()) {
+            return -1;
+        }
+        long end = off + SHALEN + 4 + _log.getInt((int) off + SHALEN);
+        return end > _log.capacity() ? -1 : end;
+    }
+
+    /** Return the record for commit ID with message MSG. */
+    private static ByteBuffer record(String id, String msg) {
+        byte[] bytes = msg.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer rec = ByteBuffer.allocate(SHALEN + 4 + bytes.length);
+        rec.put(Utils.unhex(id)).putInt(bytes.length).put(bytes);
+        rec.flip();
+        return rec;
+    }
+
+    /** Append RECORDS to LOG, first cutting off any partial record left
+     *  by an interrupted append, and remap it. */
+    private static void append(List<ByteBuffer> records) {
+        try (FileChannel ch = FileChannel.open(LOG.toPath(),
+                StandardOpenOption.WRITE)) {
+            ch.truncate(_end);
+            ch.position(_end);
+            for (ByteBuffer rec : records) {
+                while (rec.hasRemaining()) {
+                    ch.write(rec);
+                }
+            }
+            ch.force(true);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _log = null;
+        load();
+    }
+
+    /** Rewrite INDEX to cover every complete record of LOG. */
+    private static void writeindex() {
+        TreeMap<String, List<Long>> postings = new TreeMap<>();
+        for (long off = HEADER; off < _end; off = next(off)) {
+            for (String token : tokens(message(off))) {
+                postings.computeIfAbsent(token, k -> new ArrayList<>())
+                    .add(off);
+            }
+        }
+        int size = TABLEPOS + postings.size() * 4;
+        List<byte[]> names = new ArrayList<>();
+        for (Map.Entry<String, List<Long>> e : postings.entrySet()) {
+            byte[] name = e.getKey().getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            size += 4 + name.length + 4 + e.getValue().size() * 8;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.put(MAGIC).putShort((short) VERSION).putLong(_end);
+        buf.putInt(postings.size());
+        int pos = TABLEPOS + postings.size() * 4;
+        int k = 0;
+        for (List<Long> offs : postings.values()) {
+            buf.putInt(pos);
+            pos += 4 + names.get(k).length + 4 + offs.size() * 8;
+            k += 1;
+        }
+        k = 0;
+        for (List<Long> offs : postings.values()) {
+            buf.putInt(names.get(k).length).put(names.get(k));
+            buf.putInt(offs.size());
+            for (long off : offs) {
+                buf.putLong(off);
+            }
+            k += 1;
+        }
+        Utils.writeatomic(INDEX, buf.array());
+        _log = null;
+        load();
+    }
+
+    /** Map LOG and INDEX and find the records INDEX does not cover,
+     *  first building both from the commit graph if this repository
+     *  predates them. */
+    private static void load() {
+        if (_log != null) {
+            return;
+        }
+        if (!LOG.exists()) {
+            build();
+            return;
+        }
+        _log = map(LOG, LOGMAGIC);
+        _end = HEADER;
+        if (!INDEX.exists()) {
+            for (long off = HEADER; off >= 0; off = next(off)) {
+                _end = off;
+            }
+            writeindex();
+            return;
+        }
+        _index = map(INDEX, MAGIC);
+        _ntokens = _index.getInt(COUNTPOS);
+        _tail = new ArrayList<>();
+        _end = covered();
+        for (long off = _end; next(off) >= 0; off = next(off)) {
+            _tail.add(off);
+            _end = next(off);
+        }
+    }
+
+    /** Return FILE mapped, after checking that it starts with MAGIC and
+     *  VERSION. */
+    private static MappedByteBuffer map(File file, byte[] magic) {
+        MappedByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(file.toPath())) {
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        byte[] found = new byte[magic.length];
+        buf.get(0, found);
+        if (!Arrays.equals(found, magic)
+                || buf.getShort(magic.length) != VERSION) {
+            throw Utils.error("Unrecognized message index format.");
+        }
+        return buf;
+    }
+
+    /** Write LOG with the message of every commit, parents before
+     *  children, and index it. */
+    private static void build() {
+        ByteBuffer head = ByteBuffer.allocate(HEADER);
+        head.put(LOGMAGIC).putShort((short) VERSION);
+        Utils.writeatomic(LOG, head.array());
+        INDEX.delete();
+        List<ByteBuffer> records = new ArrayList<>();
+        for (int pos = 0; pos < CommitGraph.size(); pos += 1) {
+            String id = CommitGraph.id(pos);
+            Commit comm = Commit.read(new File(CommitIndex.COMMITS, id));
+            records.add(record(id, comm.getlogmsg()));
+        }
+        _end = HEADER;
+        append(records);
+    }
+}
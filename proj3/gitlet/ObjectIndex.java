@@ -0,0 +1,168 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Sorted index of object shas for Gitlet, the tiny stupid
+ *  version-control system, in the spirit of git's .idx files.  The file is
+ *  memory-mapped and searched in place, so lookups cost a binary search
+ *  and no parsing or deserialization.
+ *
+ *  Layout: "GIDX", a version, then a 256-entry fanout table whose entry B
+ *  counts the shas whose first byte is at most B, then the raw 20-byte
+ *  shas in sorted order, then one long value per sha (pack offsets, for
+ *  pack indices).
+ *  @author Varun Jadia
+ */
+class ObjectIndex {
+
+    /** Magic bytes starting an index. */
+    private static final byte[] MAGIC = {'G', 'I', 'D', 'X'};
+
+    /** Format version. */
+    private static final int VERSION = 2;
+
+    /** Length of a raw sha. */
+    static final int SHALEN = Utils.UID_LENGTH / 2;
+
+    /** Size of the fanout table, in entries. */
+    private static final int FANOUT = 256;
+
+    /** Position of the fanout table. */
+    private static final int FANOUTPOS = MAGIC.length + 4;
+
+    /** Position of the first sha. */
+    private static final int SHAPOS = FANOUTPOS + FANOUT * 4;
+
+    /** The mapped index file. */
+    private final MappedByteBuffer _buf;
+
+    /** Number of shas in the index. */
+    private final int _size;
+
+    /** The index read from FILE. */
+    ObjectIndex(File file) {
+        try (FileChannel ch = FileChannel.open(file.toPath())) {
+            _buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        byte[] magic = new byte[MAGIC.length];
+        _buf.get(0, magic);
+        if (!Arrays.equals(magic, MAGIC) || _buf.getInt(MAGIC.length)
+                != VERSION) {
+            throw Utils.error("Unrecognized index format.");
+        }
+        _size = _buf.getInt(FANOUTPOS + (FANOUT - 1) * 4);
+    }
+
+    /** Write an index of SHAS, which must be sorted, with VALUES as their
+     *  values, to FILE. */
+    static void write(File file, List<String> shas, long[] values) {
+        int n = shas.size();
+        ByteBuffer buf = ByteBuffer.allocate(SHAPOS + n * (SHALEN + 8));
+        buf.put(MAGIC).putInt(VERSION);
+        int[] fanout = new int[FANOUT];
+        for (String sha : shas) {
+            fanout[Integer.parseInt(sha.substring(0, 2), 16)] += 1;
+        }
+        int total = 0;
+        for (int b = 0; b < FANOUT; b += 1) {
+            total += fanout[b];
+            buf.putInt(total);
+        }
+        for (String sha : shas) {
+            buf.put(Utils.unhex(sha));
+        }
+        for (int i = 0; i < n; i += 1) {
+            buf.putLong(values == null ? 0 : values[i]);
+        }
+        Utils.writeatomic(file, buf.array());
+    }
+
+    /** Return the number of shas indexed. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the sha at position K. */
+    String sha(int k) {
+        byte[] raw = new byte[SHALEN];
+        _buf.get(SHAPOS + k * SHALEN, raw);
+        return Utils.hex(raw);
+    }
+
+    /** Return the value stored for the sha at position K. */
+    long value(int k) {
+        return _buf.getLong(SHAPOS + _size * SHALEN + k * 8);
+    }
+
+    /** Return the position of SHA, or -1 if it is not indexed. */
+    int find(String sha) {
+        if (sha.length() != Utils.UID_LENGTH) {
+            return -1;
+        }
+        byte[] key = Utils.unhex(sha);
+        int k = lowerbound(key);
+        if (k < _size && compare(k, key, SHALEN) == 0) {
+            return k;
+        }
+        return -1;
+    }
+
+    /** Return all indexed shas that start with the hexadecimal PREFIX,
+     *  in sorted order. */
+    List<String> matching(String prefix) {
+        List<String> result = new ArrayList<>();
+        if (prefix.isEmpty() || prefix.length() > Utils.UID_LENGTH
+                || !prefix.matches("[0-9a-f]+")) {
+            return result;
+        }
+        String even = prefix.length() % 2 == 0 ? prefix : prefix + "0";
+        byte[] key = Utils.unhex(even);
+        for (int k = lowerbound(key); k < _size; k += 1) {
+            String sha = sha(k);
+            if (!sha.startsWith(prefix)) {
+                break;
+            }
+            result.add(sha);
+        }
+        return result;
+    }
+
+    /** Return the first position whose sha is not less than KEY, which
+     *  may be shorter than a full sha. */
+    private int lowerbound(byte[] key) {
+        int first = key[0] & 0xff;
+        int lo = first == 0 ? 0 : _buf.getInt(FANOUTPOS + (first - 1) * 4);
+        int hi = _buf.getInt(FANOUTPOS + first * 4);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(mid, key, key.length) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Compare the first LEN bytes of the sha at K with KEY, as unsigned
+     *  bytes. */
+    private int compare(int k, byte[] key, int len) {
+        int base = SHAPOS + k * SHALEN;
+        for (int i = 0; i < len; i += 1) {
+            int cmp = (_buf.get(base + i) & 0xff) - (key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+}
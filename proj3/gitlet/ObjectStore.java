@@ -0,0 +1,288 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/** Content-addressed object store for Gitlet, the tiny stupid
+ *  version-control system.  Every distinct blob is kept exactly once as
+ *  .gitlet/objects/<sha>, so commits only need to remember the sha of each
+ *  file they track.
+ *
+ *  All files written through this class (objects, staged blobs and
+ *  commits) start with Codec.MAGIC, a codec id and the decoded length of
+ *  the payload as a long, followed by the payload encoded with that
+ *  codec.  Files without the header, written by the original Gitlet, are
+ *  read as raw bytes.  Objects may also live in the Packs written by
+ *  repack; normally there is one, but an interrupted repack can leave
+ *  another, and every pack is searched.
+ *  @author Varun Jadia
+ */
+class ObjectStore {
+
+    /** Directory holding all stored objects. */
+    static final File OBJECTS = new File(".gitlet/objects");
+
+    /** Length of the header of an encoded file. */
+    static final int HEADER = Codec.MAGIC.length + 1 + 8;
+
+    /** The repository's packs, or null if they have not been opened
+     *  yet. */
+    private static List<Pack> _packs;
+
+    /** Return the repository's packs. */
+    static synchronized List<Pack> packs() {
+        if (_packs == null) {
+            _packs = Pack.findall();
+        }
+        return _packs;
+    }
+
+    /** Return the pack holding object SHA, or null if none does. */
+    static Pack packwith(String sha) {
+        for (Pack pack : packs()) {
+            if (pack.contains(sha)) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    /** Return the file that holds (or would hold) object SHA. */
+    static File objectfile(String sha) {
+        return new File(OBJECTS, sha);
+    }
+
+    /** Return true iff object SHA has already been stored. */
+    static boolean contains(String sha) {
+        return objectfile(sha).exists() || packwith(sha) != null;
+    }
+
+    /** Store CONTENTS under SHA unless an object with that sha is
+     *  already present. */
+    static void put(String sha, byte[] contents) {
+        if (!contains(sha)) {
+            write(objectfile(sha), contents);
+        }
+    }
+
+    /** Move the staged file STAGED into the store as object SHA.  If the
+     *  object already exists the staged copy is simply discarded. */
+    static void move(String sha, File staged) {
+        File obj = objectfile(sha);
+        if (!staged.exists()) {
+            return;
+        }
+        if (contains(sha)) {
+            staged.delete();
+        } else if (!staged.renameTo(obj)) {
+            Utils.writeatomic(obj, Utils.readContents(staged));
+            staged.delete();
+        }
+    }
+
+    /** Return the contents of object SHA. */
+    static byte[] read(String sha) {
+        File obj = objectfile(sha);
+        if (obj.exists()) {
+            return readall(obj);
+        } else if (packwith(sha) != null) {
+            return packwith(sha).read(sha);
+        }
+        throw Utils.error("Missing object %s.", sha);
+    }
+
+    /** Return a stream over the contents of object SHA. */
+    static InputStream stream(String sha) throws IOException {
+        File obj = objectfile(sha);
+        if (obj.exists()) {
+            return open(obj);
+        } else if (packwith(sha) != null) {
+            return packwith(sha).open(sha);
+        }
+        throw Utils.error("Missing object %s.", sha);
+    }
+
+    /** Return the length of the contents of object SHA, as recorded in
+     *  its header. */
+    static long size(String sha) {
+        File obj = objectfile(sha);
+        if (obj.exists()) {
+            return size(obj);
+        } else if (packwith(sha) != null) {
+            return packwith(sha).size(sha);
+        }
+        throw Utils.error("Missing object %s.", sha);
+    }
+
+    /** Return the number of bytes of object SHA that stream holds on
+     *  the heap at once. */
+    static long buffered(String sha) {
+        if (!objectfile(sha).exists() && packwith(sha) != null) {
+            return packwith(sha).buffered(sha);
+        }
+        return Blob.CHUNK;
+    }
+
+    /** Write the contents of object SHA to DEST, streaming it through
+     *  its codec rather than reading it onto the heap. */
+    static void copy(String sha, File dest) {
+        try (InputStream in = stream(sha);
+             OutputStream out = new FileOutputStream(dest)) {
+            byte[] buf = new byte[Blob.CHUNK];
+            for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                out.write(buf, 0, n);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the contents of object SHA as a String. */
+    static String readAsString(String sha) {
+        return new String(read(sha), StandardCharsets.UTF_8);
+    }
+
+    /** Pack every stored object, loose or already packed, into a single
+     *  new pack, then remove the loose objects and any old packs.
+     *  Objects with an entry in BASES are deltified against that base. */
+    static void repack(Map<String, String> bases) {
+        TreeSet<String> shas = new TreeSet<>();
+        List<String> loose = Utils.plainFilenamesIn(OBJECTS);
+        for (String name : loose) {
+            if (name.length() == Utils.UID_LENGTH) {
+                shas.add(name);
+            }
+        }
+        for (Pack old : packs()) {
+            shas.addAll(old.shas());
+        }
+        if (shas.isEmpty()) {
+            return;
+        }
+
+        Pack.PACKDIR.mkdirs();
+        String name = "pack-" + Utils.sha1(String.join("", shas));
+        File packfile = new File(Pack.PACKDIR, name + ".pack");
+        File idxfile = new File(Pack.PACKDIR, name + ".idx");
+        File tmppack = new File(Pack.PACKDIR, ".tmp-" + name + ".pack");
+        File tmpidx = new File(Pack.PACKDIR, ".tmp-" + name + ".idx");
+        Pack.write(tmppack, tmpidx, new ArrayList<>(shas), bases);
+
+        for (Pack old : packs()) {
+            old.close();
+        }
+        Utils.install(tmpidx, idxfile);
+        Utils.install(tmppack, packfile);
+        for (File f : Pack.PACKDIR.listFiles()) {
+            if (!f.equals(packfile) && !f.equals(idxfile)) {
+                f.delete();
+            }
+        }
+        for (String obj : loose) {
+            if (shas.contains(obj)) {
+                objectfile(obj).delete();
+            }
+        }
+        _packs = null;
+    }
+
+    /* ENCODED FILES */
+
+    /** Return a stream that writes a header for the configured codec and
+     *  a payload of SIZE bytes to OUT and then encodes everything written
+     *  to it. */
+    static OutputStream encoder(OutputStream out, long size)
+        throws IOException {
+        Codec codec = Codec.configured();
+        DataOutputStream head = new DataOutputStream(out);
+        head.write(Codec.MAGIC);
+        head.write(codec.getid());
+        head.writeLong(size);
+        return codec.encode(out);
+    }
+
+    /** Record in the header of FILE, written through encoder, that its
+     *  payload is SIZE bytes long after all. */
+    static void setsize(File file, long size) {
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek(Codec.MAGIC.length + 1);
+            out.writeLong(size);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return a stream over the decoded payload of FILE. */
+    static InputStream open(File file) throws IOException {
+        InputStream in = new BufferedInputStream(
+                new FileInputStream(file), Blob.CHUNK);
+        in.mark(Codec.MAGIC.length + 1);
+        for (byte b : Codec.MAGIC) {
+            if (in.read() != b) {
+                in.reset();
+                return in;
+            }
+        }
+        int id = in.read();
+        new DataInputStream(in).readLong();
+        return Codec.byid(id).decode(in);
+    }
+
+    /** Return the length of the decoded payload of FILE, as recorded in
+     *  its header, or the length of FILE if it has none. */
+    static long size(File file) {
+        byte[] head = new byte[HEADER];
+        try (InputStream in = new FileInputStream(file)) {
+            int n = in.readNBytes(head, 0, HEADER);
+            byte[] magic = Arrays.copyOf(head, Codec.MAGIC.length);
+            if (n == HEADER && Arrays.equals(magic, Codec.MAGIC)) {
+                return ByteBuffer.wrap(head).getLong(magic.length + 1);
+            }
+            return file.length();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write CONTENTS to FILE through the configured codec, replacing
+     *  FILE atomically. */
+    static void write(File file, byte[] contents) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = encoder(bytes, contents.length)) {
+            out.write(contents);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.writeatomic(file, bytes.toByteArray());
+    }
+
+    /** Return the decoded contents of FILE. */
+    static byte[] readall(File file) {
+        try (InputStream in = open(file)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[Blob.CHUNK];
+            for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
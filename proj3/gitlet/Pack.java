@@ -0,0 +1,351 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/** Pack files for Gitlet, the tiny stupid version-control system.  A pack
+ *  holds many objects in one file, each stored either whole or as a
+ *  Delta against another object in the same pack, and comes with an index
+ *  of object shas sorted for binary search.
+ *
+ *  A pack is "PACK", a version and an object count, followed by entries
+ *  of the form: type byte (FULL or DELTA), codec id byte, the 20-byte
+ *  base sha (DELTA entries only), the payload length as a long, the
+ *  length of the object's contents as a long, and the payload encoded
+ *  with that codec.  Its index is an ObjectIndex whose values are the
+ *  entry offsets.
+ *  @author Varun Jadia
+ */
+class Pack {
+
+    /** Directory holding packs and their indices. */
+    static final File PACKDIR = new File(".gitlet/objects/pack");
+
+    /** Longest chain of deltas allowed before an object is stored
+     *  whole again. */
+    static final int MAXDEPTH = 16;
+
+    /** Objects whose stored size exceeds this are never deltified, so
+     *  packing never has to hold huge files on the heap. */
+    static final long DELTALIMIT = 1 << 24;
+
+    /** Entry type: payload is the object's full contents. */
+    private static final int FULL = 0;
+
+    /** Entry type: payload is a delta against a base object. */
+    private static final int DELTA = 1;
+
+    /** Magic bytes starting a pack. */
+    private static final byte[] MAGIC = {'P', 'A', 'C', 'K'};
+
+    /** Format version written to packs. */
+    private static final int VERSION = 1;
+
+    /** Length of a raw sha. */
+    private static final int SHALEN = ObjectIndex.SHALEN;
+
+    /** Open channel on the pack file. */
+    private final FileChannel _channel;
+
+    /** Index of the objects in this pack and their offsets. */
+    private final ObjectIndex _index;
+
+    /** A pack read from PACKFILE, whose index is IDXFILE. */
+    Pack(File packfile, File idxfile) {
+        _index = new ObjectIndex(idxfile);
+        try {
+            _channel = FileChannel.open(packfile.toPath());
+            ByteBuffer head = ByteBuffer.allocate(MAGIC.length + 4);
+            _channel.read(head, 0);
+            byte[] magic = new byte[MAGIC.length];
+            head.get(0, magic);
+            if (!Arrays.equals(magic, MAGIC)
+                    || head.getInt(MAGIC.length) != VERSION) {
+                throw Utils.error("Unrecognized pack format.");
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the packs in PACKDIR, in name order.  A pack whose index
+     *  is missing, as when repack was interrupted while installing it,
+     *  is skipped; its objects are still loose or in the old pack. */
+    static List<Pack> findall() {
+        List<Pack> result = new ArrayList<>();
+        File[] packs =
+            PACKDIR.listFiles((dir, name) -> name.startsWith("pack-")
+                              && name.endsWith(".pack"));
+        if (packs == null) {
+            return result;
+        }
+        Arrays.sort(packs);
+        for (File pack : packs) {
+            String base = pack.getName().substring(0,
+                    pack.getName().length() - ".pack".length());
+            File idx = new File(PACKDIR, base + ".idx");
+            if (idx.exists()) {
+                result.add(new Pack(pack, idx));
+            }
+        }
+        return result;
+    }
+
+    /** Return true iff object SHA is in this pack. */
+    boolean contains(String sha) {
+        return _index.find(sha) >= 0;
+    }
+
+    /** Return the shas of all objects in this pack. */
+    List<String> shas() {
+        List<String> result = new ArrayList<>();
+        for (int k = 0; k < _index.size(); k += 1) {
+            result.add(_index.sha(k));
+        }
+        return result;
+    }
+
+    /** Return the length of the contents of object SHA. */
+    long size(String sha) {
+        return entry(sha).size;
+    }
+
+    /** Return the number of bytes of object SHA that open holds on the
+     *  heap at once: a chunk for a whole object, which is streamed, and
+     *  all of it for a delta, which is rebuilt in memory. */
+    long buffered(String sha) {
+        return entry(sha).type == FULL ? Blob.CHUNK : size(sha);
+    }
+
+    /** Return the contents of object SHA, resolving any deltas. */
+    byte[] read(String sha) {
+        Entry e = entry(sha);
+        byte[] payload = readall(e);
+        if (e.type == FULL) {
+            return payload;
+        }
+        return Delta.apply(read(e.base), payload);
+    }
+
+    /** Return a stream over the contents of object SHA.  Whole objects
+     *  are streamed straight from the pack. */
+    InputStream open(String sha) {
+        Entry e = entry(sha);
+        if (e.type == FULL) {
+            return e.codec.decode(new Region(e.start, e.length));
+        }
+        return new ByteArrayInputStream(read(sha));
+    }
+
+    /** Close the underlying pack file. */
+    void close() {
+        try {
+            _channel.close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write a pack of the objects SHAS to PACKFILE and its index to
+     *  IDXFILE.  An object that has an entry in BASES is stored as a delta
+     *  against that base when that pays off. */
+    static void write(File packfile, File idxfile, List<String> shas,
+                      Map<String, String> bases) {
+        List<String> sorted = new ArrayList<>(shas);
+        Collections.sort(sorted);
+        long[] offsets = new long[sorted.size()];
+        try (FileChannel ch = FileChannel.open(packfile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer head = ByteBuffer.allocate(MAGIC.length + 8);
+            head.put(MAGIC).putInt(VERSION).putInt(sorted.size()).flip();
+            ch.write(head);
+            for (int i = 0; i < sorted.size(); i += 1) {
+                offsets[i] = ch.position();
+                writeentry(ch, sorted.get(i), bases.get(sorted.get(i)));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        ObjectIndex.write(idxfile, sorted, offsets);
+    }
+
+    /** Append the entry for object SHA to CH, as a delta against BASE if
+     *  BASE is non-null and the delta is small enough to be worth it. */
+    private static void writeentry(FileChannel ch, String sha, String base)
+        throws IOException {
+        Codec codec = Codec.configured();
+        byte[] delta = null;
+        long size = 0;
+        if (base != null && ObjectStore.contains(base)
+                && ObjectStore.size(sha) <= DELTALIMIT
+                && ObjectStore.size(base) <= DELTALIMIT) {
+            byte[] target = ObjectStore.read(sha);
+            delta = Delta.create(ObjectStore.read(base), target);
+            size = target.length;
+            if (delta.length > target.length * 3 / 4) {
+                delta = null;
+                size = 0;
+            }
+        }
+
+        ByteBuffer head = ByteBuffer.allocate(2 + SHALEN);
+        head.put((byte) (delta == null ? FULL : DELTA));
+        head.put((byte) codec.getid());
+        if (delta != null) {
+            head.put(Utils.unhex(base));
+        }
+        head.flip();
+        ch.write(head);
+        long lenpos = ch.position();
+        ch.write(ByteBuffer.allocate(16));
+
+        OutputStream out = codec.encode(new BufferedOutputStream(
+                new Unclosing(Channels.newOutputStream(ch)), Blob.CHUNK));
+        if (delta != null) {
+            out.write(delta);
+        } else {
+            try (InputStream in = ObjectStore.stream(sha)) {
+                byte[] buf = new byte[Blob.CHUNK];
+                for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                    out.write(buf, 0, n);
+                    size += n;
+                }
+            }
+        }
+        out.close();
+        long end = ch.position();
+        ByteBuffer len = ByteBuffer.allocate(16);
+        len.putLong(end - lenpos - 16).putLong(size).flip();
+        ch.write(len, lenpos);
+    }
+
+    /** Return the parsed header of the entry for SHA. */
+    private Entry entry(String sha) {
+        int k = _index.find(sha);
+        if (k < 0) {
+            throw Utils.error("Missing object %s.", sha);
+        }
+        try {
+            long pos = _index.value(k);
+            ByteBuffer head = ByteBuffer.allocate(2 + SHALEN + 16);
+            _channel.read(head, pos);
+            head.flip();
+            Entry e = new Entry();
+            e.type = head.get();
+            e.codec = Codec.byid(head.get());
+            if (e.type == DELTA) {
+                byte[] base = new byte[SHALEN];
+                head.get(base);
+                e.base = Utils.hex(base);
+            }
+            e.length = head.getLong();
+            e.size = head.getLong();
+            e.start = pos + head.position();
+            return e;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the decoded payload of E. */
+    private byte[] readall(Entry e) {
+        try (InputStream in = e.codec.decode(new Region(e.start, e.length))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[Blob.CHUNK];
+            for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Header of one pack entry. */
+    private static class Entry {
+        /** FULL or DELTA. */
+        private int type;
+        /** Codec of the payload. */
+        private Codec codec;
+        /** Sha of the delta base, for DELTA entries. */
+        private String base;
+        /** Position of the payload in the pack. */
+        private long start;
+        /** Length of the payload. */
+        private long length;
+        /** Length of the object's contents. */
+        private long size;
+    }
+
+    /** Stream over a range of the pack, read with positional reads so
+     *  that several may be open on the one channel at once. */
+    private class Region extends InputStream {
+
+        /** Next position to read. */
+        private long _pos;
+
+        /** Position just past the end of the range. */
+        private final long _end;
+
+        /** Stream over the LENGTH bytes of the pack at START. */
+        Region(long start, long length) {
+            _pos = start;
+            _end = start + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (_pos >= _end) {
+                return -1;
+            }
+            int n = (int) Math.min(len, _end - _pos);
+            n = _channel.read(ByteBuffer.wrap(b, off, n), _pos);
+            if (n > 0) {
+                _pos += n;
+            }
+            return n;
+        }
+    }
+
+    /** Output stream whose close only flushes, leaving the channel
+     *  beneath it open for the next entry. */
+    private static class Unclosing extends FilterOutputStream {
+
+        /** Wraps OUT. */
+        Unclosing(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
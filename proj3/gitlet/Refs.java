@@ -0,0 +1,153 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+
+/** Branch references for Gitlet, the tiny stupid version-control system.
+ *  Each branch is its own file, .gitlet/refs/heads/<name>, holding the id
+ *  of its head commit, and .gitlet/HEAD names the current branch as
+ *  "ref: refs/heads/<name>", so creating a branch or committing on one
+ *  only rewrites that branch's file.
+ *
+ *  Updates are made while holding an exclusive FileChannel lock on
+ *  .gitlet/lock, and only after checking that every ref to be changed
+ *  still has the value it had when it was read, so concurrent Gitlet
+ *  processes fail instead of silently overwriting each other.
+ *  @author Varun Jadia
+ */
+class Refs {
+
+    /** Directory holding one file per branch. */
+    static final File HEADS = new File(".gitlet/refs/heads");
+
+    /** File naming the current branch. */
+    static final File HEAD = new File(".gitlet/HEAD");
+
+    /** File locked while references are updated. */
+    static final File LOCK = new File(".gitlet/lock");
+
+    /** Prefix of the contents of HEAD. */
+    private static final String REFPREFIX = "ref: refs/heads/";
+
+    /** True while this process holds the lock on LOCK. */
+    private static boolean _held;
+
+    /** Return a map from each branch name to its head commit id. */
+    static HashMap<String, String> branches() {
+        HashMap<String, String> result = new HashMap<>();
+        if (HEADS.isDirectory()) {
+            for (String name : Utils.plainFilenamesIn(HEADS)) {
+                if (!name.startsWith(".tmp-")) {
+                    result.put(name, read(name));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the head commit id of branch NAME, or null if there is no
+     *  such branch. */
+    static String read(String name) {
+        File ref = new File(HEADS, name);
+        if (!ref.isFile()) {
+            return null;
+        }
+        return Utils.readContentsAsString(ref).trim();
+    }
+
+    /** Return the name of the current branch, or null if HEAD has not
+     *  been written. */
+    static String head() {
+        if (!HEAD.isFile()) {
+            return null;
+        }
+        String head = Utils.readContentsAsString(HEAD).trim();
+        if (!head.startsWith(REFPREFIX)) {
+            throw Utils.error("Unrecognized HEAD.");
+        }
+        return head.substring(REFPREFIX.length());
+    }
+
+    /** Check that every branch whose head differs between BEFORE and
+     *  AFTER still has its BEFORE value (or still does not exist), and,
+     *  if the current branch is to change from OLDHEAD to NEWHEAD, that
+     *  HEAD still names OLDHEAD.  The lock must be held. */
+    static void check(Map<String, String> before, Map<String, String> after,
+                      String oldhead, String newhead) {
+        for (String name : changed(before, after)) {
+            if (!Objects.equals(read(name), before.get(name))) {
+                throw Utils.error("Branch %s was changed by another "
+                                  + "process.", name);
+            }
+        }
+        if (oldhead != null && !oldhead.equals(newhead)
+                && !oldhead.equals(head())) {
+            throw Utils.error("HEAD was changed by another process.");
+        }
+    }
+
+    /** Rewrite the files of every branch whose head differs between
+     *  BEFORE and AFTER, deleting those not in AFTER, and point HEAD at
+     *  branch NEWHEAD if it differs from OLDHEAD.  The lock must be
+     *  held. */
+    static void write(Map<String, String> before, Map<String, String> after,
+                      String oldhead, String newhead) {
+        HEADS.mkdirs();
+        for (String name : changed(before, after)) {
+            String id = after.get(name);
+            if (id == null) {
+                new File(HEADS, name).delete();
+            } else {
+                Utils.writeatomic(new File(HEADS, name),
+                                  (id + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        if (!newhead.equals(oldhead)) {
+            Utils.writeatomic(HEAD, (REFPREFIX + newhead + "\n")
+                              .getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /** Run ACTION while holding the exclusive lock on LOCK.  A thread
+     *  already holding it, as when ACTION itself calls locked, just runs
+     *  ACTION. */
+    static synchronized void locked(Runnable action) {
+        if (_held) {
+            action.run();
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(LOCK.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = ch.lock();
+            _held = true;
+            try {
+                action.run();
+            } finally {
+                _held = false;
+                lock.release();
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot lock the repository (%s).",
+                              excp.getMessage());
+        }
+    }
+
+    /** Return the names of branches whose heads differ between BEFORE
+     *  and AFTER, in sorted order. */
+    private static TreeSet<String> changed(Map<String, String> before,
+                                           Map<String, String> after) {
+        TreeSet<String> result = new TreeSet<>(before.keySet());
+        result.addAll(after.keySet());
+        result.removeIf(name -> Objects.equals(before.get(name),
+                                               after.get(name)));
+        return result;
+    }
+}
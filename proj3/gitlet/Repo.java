@@ -1,23 +1,68 @@
 package gitlet;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.Serializable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.BiFunction;
 
 /** Repository/Tree class for Gitlet, the tiny stupid version-control system.
+ *  Repository state is saved in the binary format written by encode;
+ *  state saved by the original Gitlet is migrated to it through Legacy.
  *  @author Varun Jadia
  */
 
-public class Repo implements Serializable {
+public class Repo {
+
+    /** Magic bytes starting encoded repository state. */
+    private static final byte[] MAGIC = {'G', 'R', 'E', 'P'};
+
+    /** Version of the repository state encoding. */
+    private static final int VERSION = 1;
+
+    /** Default number of commits kept in the commit cache. */
+    static final int COMMITCACHE = 512;
+
+    /** Recently read commits by id, least recently used first.  Being
+     *  static, it is shared by every command run in this process. */
+    private static LinkedHashMap<String, Commit> _commitcache;
+
+    /** Number of commit reads answered from the commit cache. */
+    private static long _cachehits;
+
+    /** Number of commit reads that had to decode the commit file. */
+    private static long _cachemisses;
+
+    /** The encoded state last read or written, or null if none. */
+    private byte[] _saved;
+
+    /** Branch heads as last read from or written to Refs. */
+    private HashMap<String, String> _savedrefs = new HashMap<>();
+
+    /** Current branch as last read from or written to Refs. */
+    private String _savedhead;
 
     /** tracks sha code of last/head commit.*/
     private String _lastcommit;
@@ -34,15 +79,127 @@ public class Repo implements Serializable {
     /** Tracks file to be removed in next commit. */
     private ArrayList<String> _rmfilenames = new ArrayList<>();
 
-    /**Tracks all commit ids. */
-    private HashSet<String> _commitids;
-
     /**Boolean mask for merges. */
     private Boolean _merge = false;
 
     /**mergeparent SHAcode. */
     private String _lastmerge;
 
+    /** Return this repository's state in Gitlet's binary format. */
+    byte[] encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.write(MAGIC);
+            out.writeShort(VERSION);
+            out.writeBoolean(_merge);
+            Utils.writesha(out, _lastmerge);
+            out.writeInt(_stagefiles.size());
+            for (Blob blob : new TreeMap<>(_stagefiles).values()) {
+                blob.encode(out);
+            }
+            out.writeInt(_rmfilenames.size());
+            for (String filename : _rmfilenames) {
+                Utils.writestring(out, filename);
+            }
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding repository.");
+        }
+    }
+
+    /** Write this repository's state to FILE, atomically, unless it is
+     *  unchanged since it was last read or written, and write any branch
+     *  heads that have changed to Refs.  Fails, writing nothing, if
+     *  another process has changed the state or those refs meanwhile. */
+    void save(File file) {
+        byte[] state = encode();
+        if (_savedrefs == null) {
+            _savedrefs = new HashMap<>();
+        }
+        Refs.locked(() -> {
+            boolean dirty = !Arrays.equals(state, _saved);
+            if (dirty && _saved != null && file.exists()
+                    && !Arrays.equals(Utils.readContents(file), _saved)) {
+                throw Utils.error("The repository was changed by another "
+                                  + "process.");
+            }
+            Refs.check(_savedrefs, _branchmap, _savedhead, _currbranch);
+            Refs.write(_savedrefs, _branchmap, _savedhead, _currbranch);
+            if (dirty) {
+                Utils.writeatomic(file, state);
+            }
+        });
+        _saved = state;
+        _savedrefs = new HashMap<>(_branchmap);
+        _savedhead = _currbranch;
+    }
+
+    /** Return the repository whose state is encoded in BYTES, which may
+     *  also be state saved by the original Gitlet. */
+    static Repo decode(byte[] bytes) {
+        if (Utils.isserialized(bytes)) {
+            Object obj = Legacy.read(bytes);
+            if (!(obj instanceof Legacy.OldRepo)) {
+                throw Utils.error("Unrecognized repository format.");
+            }
+            return migrate((Legacy.OldRepo) obj);
+        }
+        try {
+            DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(bytes));
+            Utils.readheader(in, MAGIC, VERSION);
+            Repo repo = new Repo();
+            repo._saved = bytes;
+            repo._branchmap = Refs.branches();
+            repo._currbranch = Refs.head();
+            repo._lastcommit = repo._branchmap.get(repo._currbranch);
+            repo._savedrefs = new HashMap<>(repo._branchmap);
+            repo._savedhead = repo._currbranch;
+            repo._merge = in.readBoolean();
+            repo._lastmerge = Utils.readsha(in);
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                Blob blob = Blob.decode(in);
+                repo._stagefiles.put(blob.getfilename(), blob);
+            }
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                repo._rmfilenames.add(Utils.readstring(in));
+            }
+            return repo;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the repository saved by the original Gitlet as OLD.  Its
+     *  commits and staged files, which held the contents of every file,
+     *  are first rewritten in the current formats with the contents moved
+     *  to the object store, and the repository itself is saved in the
+     *  current format last, so an interrupted migration is redone. */
+    private static Repo migrate(Legacy.OldRepo old) {
+        Legacy.convertcommits();
+        Repo repo = new Repo();
+        repo._lastcommit = old._lastcommit;
+        repo._currbranch = old._currbranch;
+        repo._branchmap = old._branchmap;
+        repo._merge = old._merge != null && old._merge;
+        repo._lastmerge = old._lastmerge;
+        if (old._rmfilenames != null) {
+            repo._rmfilenames.addAll(old._rmfilenames);
+        }
+        if (old._stagefiles != null) {
+            for (Legacy.OldBlob blob : old._stagefiles.values()) {
+                ObjectStore.write(new File(Blob.STAGING, blob._shacode),
+                        blob._contents.getBytes(StandardCharsets.UTF_8));
+                repo._stagefiles.put(blob._filename,
+                                     new Blob(blob._filename, blob._shacode));
+            }
+        }
+        repo.save(new File(".gitlet/repo"));
+        return repo;
+    }
+
     /**initialize a new repo. RETURN*/
     public Repo init() {
 
@@ -53,106 +210,128 @@ public class Repo implements Serializable {
         commits.mkdir();
         File staging = new File(".gitlet/staging");
         staging.mkdir();
+        ObjectStore.OBJECTS.mkdir();
 
         _stagefiles = new HashMap<String, Blob>();
         _rmfilenames = new ArrayList<>();
-        _commitids = new HashSet<>();
         _lastcommit = initcom.gethash();
 
         String hash = initcom.gethash();
         File comm = new File(".gitlet/commits/" + hash);
-        Utils.writeContents(comm, Utils.serialize(initcom));
-        _commitids.add(hash);
+        initcom.write(comm);
+        CommitIndex.add(hash);
+        CommitGraph.add(hash, initcom);
+        MessageIndex.add(hash, initcom.getlogmsg());
         _branchmap.put("master", hash);
         _currbranch = "master";
         return this;
     }
 
-    /**add method for gitlet. FILENAME*/
-    public void add(String filename) {
-        File file = new File(filename);
-        if (!file.exists()) {
-            System.out.print("File does not exist.");
-            System.exit(0);
+    /**add method for gitlet: stage every file selected by the pathspecs
+     * SPECS (file names, directories, globs or -A), and stage the removal
+     * of tracked files a directory, glob or -A selects that are gone.*/
+    public void add(String... specs) {
+        HashMap<String, String> head = readcommit(_lastcommit).getfiles();
+        TreeSet<String> present = new TreeSet<>();
+        TreeSet<String> missing = new TreeSet<>();
+        for (String spec : specs) {
+            if (!Worktree.select(spec, head.keySet(), present, missing)) {
+                throw Utils.error("File does not exist.");
+            }
         }
 
         if (_rmfilenames == null) {
             _rmfilenames = new ArrayList<>();
         }
-        if (_rmfilenames.contains(filename)) {
-            _rmfilenames.remove(filename);
+        _rmfilenames.removeAll(present);
+        for (String filename : missing) {
+            unstage(filename);
+            if (!_rmfilenames.contains(filename)) {
+                _rmfilenames.add(filename);
+            }
         }
 
-        Blob fileblob = new Blob(filename);
-        String hashfile = fileblob.getshacode();
-        Commit lastcommit = readcommit(_lastcommit);
+        List<String> changed = new ArrayList<>();
+        for (String filename : present) {
+            String cached = StatCache.cached(filename);
+            if (cached != null && cached.equals(head.get(filename))) {
+                unstage(filename);
+            } else {
+                changed.add(filename);
+            }
+        }
 
-        for (String name : lastcommit.getfiles().keySet()) {
-            if (hashfile.equals(lastcommit.getfiles().get(name).getshacode())) {
-                if (_stagefiles.containsKey(name)) {
-                    String code = lastcommit.getfiles().get(name).getshacode();
-                    File remove = new File(".gitlet/staging" + code);
-                    remove.delete();
-                }
-                return;
+        for (Map.Entry<String, Blob> e : Hasher.stage(changed).entrySet()) {
+            String filename = e.getKey();
+            String hashfile = e.getValue().getshacode();
+            StatCache.record(filename, hashfile);
+            if (hashfile.equals(head.get(filename))) {
+                unstage(filename);
+                new File(Blob.STAGING, hashfile).delete();
+                continue;
+            }
+            Blob old = _stagefiles.put(filename, e.getValue());
+            if (old != null && !old.getshacode().equals(hashfile)) {
+                new File(Blob.STAGING, old.getshacode()).delete();
             }
         }
+    }
 
-        File stage = new File(".gitlet/staging/" + hashfile);
-        _stagefiles.put(filename, fileblob);
-        Utils.writeObject(stage, fileblob);
+    /** Drop FILENAME from the staging area, if it is staged. */
+    private void unstage(String filename) {
+        Blob old = _stagefiles.remove(filename);
+        if (old != null) {
+            new File(Blob.STAGING, old.getshacode()).delete();
+        }
     }
 
     /**commit method. MESSAGE TIME*/
     public void commit(String message, String time) {
         if (message.equals("")) {
-            System.out.print("Please enter a commit message.");
-            System.exit(0);
+            throw Utils.error("Please enter a commit message.");
         }
         if (_stagefiles.isEmpty() && _rmfilenames.isEmpty()
                 || _rmfilenames == null) {
-            System.out.print("No changes added to the commit.");
-            System.exit(0);
+            throw Utils.error("No changes added to the commit.");
         }
         Commit lastcommit = readcommit(_lastcommit);
 
+        HashMap<String, String> changes = new HashMap<>();
+        for (String filename : _rmfilenames) {
+            changes.put(filename, null);
+        }
+        for (String filename : _stagefiles.keySet()) {
+            changes.put(filename, _stagefiles.get(filename).getshacode());
+        }
+        String tree = Tree.update(lastcommit.gettree(), changes);
+
         Commit comm;
         if (_merge) {
-            comm = new Commit(message, time,
-                    lastcommit.getfiles(), _lastcommit, _lastmerge);
+            comm = new Commit(message, time, tree, _lastcommit, _lastmerge);
         } else {
-            comm = new Commit(message, time,
-                    lastcommit.getfiles(), _lastcommit);
+            comm = new Commit(message, time, tree, _lastcommit);
         }
         if (comm.gethash().equals(_lastcommit)) {
-            System.out.print("No changes added to the commit.");
-            System.exit(0);
+            throw Utils.error("No changes added to the commit.");
         }
 
-        for (String filename : comm.getfiles().keySet()) {
-            if (_stagefiles.containsKey(filename)) {
-                comm.getfiles().remove(filename);
-                comm.getfiles().put(filename, _stagefiles.get(filename));
-            }
-        }
-        comm.getfiles().keySet().removeAll(_rmfilenames);
-        for (String filename : _stagefiles.keySet()) {
-            if (!comm.getfiles().containsKey(filename)) {
-                comm.getfiles().put(filename, _stagefiles.get(filename));
-                String code = _stagefiles.get(filename).getshacode();
-                File delstage = new File(".gitlet/staging/" + code);
-                delstage.delete();
+        for (String code : changes.values()) {
+            if (code != null) {
+                ObjectStore.move(code, new File(".gitlet/staging/" + code));
             }
         }
 
         File addcomm = new File(".gitlet/commits/" + comm.gethash());
-        Utils.writeObject(addcomm, comm);
+        comm.write(addcomm);
+        commitcache().put(comm.gethash(), comm);
 
         String commhash = comm.gethash();
         _stagefiles.clear();
         _lastcommit = comm.gethash();
         _branchmap.put(_currbranch, commhash);
-        _commitids.add(commhash);
+        CommitIndex.add(commhash);
+        CommitGraph.add(commhash, comm);
+        MessageIndex.add(commhash, message);
         _lastmerge = null;
         _rmfilenames.clear();
         _merge = false;
@@ -161,91 +340,84 @@ public class Repo implements Serializable {
     /**java gitlet.Main checkout -- [file name]. FILENAME*/
     public void checkout1(String filename) {
         Commit lastcommit = readcommit(_lastcommit);
-        Blob blb = null;
+        String blb = null;
         if (lastcommit.getfiles().containsKey(filename)) {
             blb = lastcommit.getfiles().get(filename);
         } else {
-            System.out.print("File does not exist in that commit.");
-            System.exit(0);
+            throw Utils.error("File does not exist in that commit.");
         }
-        File overwrite = new File(filename);
-        Utils.writeContents(overwrite, blb.getcontents());
+        checkoutfile(filename, blb);
     }
 
     /** java gitlet.Main
      * checkout [commit id] -- [file name]. COMMITID FILENAME*/
     public void checkout2(String commitid, String filename) {
-        int hashlength = _lastcommit.length();
-        if (commitid.length() < hashlength) {
-            int commlen = commitid.length();
-            File dir = new File(".gitlet/commits/");
-            for (File commfile : dir.listFiles()) {
-                Commit comm = Utils.readObject(commfile, Commit.class);
-                String commid = comm.gethash();
-                if (commid.substring(0, commlen).equals(commitid)) {
-                    commitid = commid;
-                }
-            }
-        }
-
-        File checkcomm = new File(".gitlet/commits/" + commitid);
-        Commit lastcommit = null;
-        if (checkcomm.exists()) {
-            lastcommit = Utils.readObject(checkcomm, Commit.class);
-        } else {
-            System.out.print("No commit with that id exists.");
-            System.exit(0);
-        }
-        Blob blb = null;
+        Commit lastcommit = readcommit(CommitIndex.resolve(commitid));
+        String blb = null;
         if (lastcommit.getfiles().containsKey(filename)) {
             blb = lastcommit.getfiles().get(filename);
         } else {
-            System.out.print("File does not exist in that commit.");
-            System.exit(0);
+            throw Utils.error("File does not exist in that commit.");
+        }
+        checkoutfile(filename, blb);
+    }
+
+    /** Write blob BLB to working file FILENAME, unless other files are
+     *  in the way of it. */
+    private static void checkoutfile(String filename, String blb) {
+        if (Worktree.inway(filename, Collections.singleton(filename))) {
+            throw Utils.error("There is an untracked "
+                    + "file in the way; delete it or add it first.");
         }
-        File overwrite = new File(filename);
-        Utils.writeContents(overwrite, blb.getcontents());
+        ObjectStore.copy(blb, Worktree.create(filename));
     }
 
     /**java gitlet.Main checkout [branch name]. BRANCHNAME*/
     public void checkout3(String branchname) {
         if (!_branchmap.containsKey(branchname)) {
-            System.out.print("No such branch exists.");
-            System.exit(0);
+            throw Utils.error("No such branch exists.");
         } else if (_currbranch.equals(branchname)) {
-            System.out.print("No need to checkout to the current branch.");
-            System.exit(0);
+            throw Utils.error("No need to checkout to the current branch.");
         }
-        Commit currhead = readcommit(_lastcommit);
-        Commit lastcommit = readcommit(_branchmap.get(branchname));
+        switchto(readcommit(_branchmap.get(branchname)));
+        _currbranch = branchname;
+        _lastcommit = _branchmap.get(_currbranch);
+    }
 
-        HashMap<String, Blob> commfiles = lastcommit.getfiles();
-        HashMap<String, Blob> currheadfiles = currhead.getfiles();
+    /** Make the working directory hold the files of TARGET in place of
+     *  those of the current head, and clear the staging area.  Only the
+     *  files whose blobs differ between the two commits' trees are
+     *  deleted or written; every other file is left as it is. */
+    private void switchto(Commit target) {
+        Commit currhead = readcommit(_lastcommit);
+        TreeMap<String, Tree.Change> changes =
+            Tree.diff(currhead.gettree(), target.gettree());
 
-        for (String file : commfiles.keySet()) {
-            File plstage = new File(file);
-            if (!currheadfiles.containsKey(file) && plstage.exists()) {
-                System.out.print("There is an untracked "
-                        + "file in the way; delete it or add it first.");
-                System.exit(0);
+        List<String> leaving = new ArrayList<>();
+        for (Map.Entry<String, Tree.Change> e : changes.entrySet()) {
+            if (e.getValue().to() == null) {
+                leaving.add(e.getKey());
             }
         }
-
-        for (String file : currheadfiles.keySet()) {
-            File overwrite = new File(file);
-            if (!commfiles.containsKey(file)) {
-                Utils.restrictedDelete(overwrite);
+        for (Map.Entry<String, Tree.Change> e : changes.entrySet()) {
+            if (e.getValue().from() == null
+                    && Worktree.inway(e.getKey(), leaving)) {
+                throw Utils.error("There is an untracked "
+                        + "file in the way; delete it or add it first.");
             }
         }
 
-        for (String file : commfiles.keySet()) {
-            String contents = commfiles.get(file).getcontents();
-            File overwrite = new File(file);
-            Utils.writeContents(overwrite, contents);
+        for (String filename : leaving) {
+            Worktree.delete(filename);
         }
 
-        _currbranch = branchname;
-        _lastcommit = _branchmap.get(_currbranch);
+        TreeMap<String, String> towrite = new TreeMap<>();
+        for (Map.Entry<String, Tree.Change> e : changes.entrySet()) {
+            if (e.getValue().to() != null) {
+                towrite.put(e.getKey(), e.getValue().to());
+            }
+        }
+        Hasher.materialize(towrite);
 
         for (String filename : _stagefiles.keySet()) {
             File delstage = new File(".gitlet/staging/"
@@ -255,73 +427,201 @@ public class Repo implements Serializable {
         _stagefiles.clear();
     }
 
-    /**prints commit logs. */
-    public void log() {
+    /** java gitlet.Main log [-n N] [--since DATE] [--oneline]: print at
+     *  most LIMIT commits of the current branch, newest first, following
+     *  first parents and stopping at the first commit made before SINCE
+     *  (in epoch seconds), one line each if ONELINE. */
+    public void log(int limit, long since, boolean oneline) {
+        Writer out = logwriter();
         String counter = _branchmap.get(_currbranch);
-        while (counter != null) {
-            Commit lastcommit = readcommit(counter);
-            System.out.println("===");
-            System.out.println("commit " + lastcommit.gethash());
-            if (lastcommit.getmergeparenthash() != null) {
-                String currhash = lastcommit.gethash().substring(0, 7);
-                String mergehash = lastcommit.gethash().substring(0, 7);
-                System.out.println("Merge: " + currhash + " " + mergehash);
+        for (int n = 0; counter != null && n < limit; n += 1) {
+            Commit comm = readcommit(counter);
+            if (CommitGraph.parsetime(comm.gettimestamp()) < since
+                    || !printlog(out, comm, oneline)) {
+                break;
             }
-            System.out.println("Date: " + lastcommit.gettimestamp());
-            System.out.println(lastcommit.getlogmsg());
-            System.out.println();
-            counter = lastcommit.getparenthash();
+            counter = comm.getparenthash();
         }
+        closelog(out);
     }
 
     /** rm function for gitlet. FILENAME*/
     public void rm(String filename) {
+        filename = Worktree.name(filename);
         Commit lastcommit = readcommit(_lastcommit);
         if (!_stagefiles.containsKey(filename)
                 && !lastcommit.getfiles().containsKey(filename)) {
-            System.out.print("No reason to remove the file.");
-            System.exit(0);
+            throw Utils.error("No reason to remove the file.");
         }
 
-        File remove = new File(".gitlet/staging/" + filename);
-        _stagefiles.remove(filename);
-        remove.delete();
+        unstage(filename);
 
         if (lastcommit.getfiles().containsKey(filename)) {
             if (_rmfilenames == null) {
                 _rmfilenames = new ArrayList<>();
             }
             _rmfilenames.add(filename);
-            File rm = new File(filename);
-            Utils.restrictedDelete(rm);
+            Worktree.delete(filename);
         }
     }
-    /** global log. */
-    public void globallog() {
-        File commitdir = new File(".gitlet/commits/");
-        for (File file : commitdir.listFiles()) {
-            Commit comm = Utils.readObject(file, Commit.class);
-            System.out.println("===");
-            System.out.println("commit " + comm.gethash());
-            System.out.println("Date: " + comm.gettimestamp());
-            System.out.println(comm.getlogmsg());
-            System.out.println();
+    /** java gitlet.Main global-log [-n N] [--since DATE] [--oneline]:
+     *  print at most LIMIT of all commits ever made no earlier than SINCE
+     *  (in epoch seconds), newest first, one line each if ONELINE.  The
+     *  commit graph gives the order and the timestamps, so commits
+     *  outside the range are never read. */
+    public void globallog(int limit, long since, boolean oneline) {
+        Writer out = logwriter();
+        int n = 0;
+        for (int pos = CommitGraph.size() - 1; pos >= 0 && n < limit;
+             pos -= 1) {
+            if (CommitGraph.timestamp(pos) < since) {
+                continue;
+            }
+            if (!printlog(out, readcommit(CommitGraph.id(pos)), oneline)) {
+                break;
+            }
+            n += 1;
+        }
+        closelog(out);
+    }
+
+    /** java gitlet.Main diff: show how the working files differ from
+     *  their versions in the current commit, for every file tracked there
+     *  or staged.  Files whose stat data and hence sha match the commit
+     *  are skipped without being read. */
+    public void diff() {
+        HashMap<String, String> files = readcommit(_lastcommit).getfiles();
+        TreeSet<String> filenames = new TreeSet<>(files.keySet());
+        filenames.addAll(_stagefiles.keySet());
+        List<String> present = new ArrayList<>();
+        for (String filename : filenames) {
+            if (new File(filename).isFile()) {
+                present.add(filename);
+            }
+        }
+        TreeMap<String, String> shas = Hasher.hash(present);
+        TreeMap<String, Tree.Change> changes = new TreeMap<>();
+        for (String filename : filenames) {
+            String from = files.get(filename), to = shas.get(filename);
+            if (!Objects.equals(from, to)) {
+                changes.put(filename, new Tree.Change(from, to));
+            }
+        }
+        printdiff(changes, (filename, sha) ->
+                  Utils.readContentsAsString(new File(filename)));
+    }
+
+    /** java gitlet.Main diff --staged: show the changes staged for the
+     *  next commit against the current one. */
+    public void diffstaged() {
+        HashMap<String, String> files = readcommit(_lastcommit).getfiles();
+        TreeMap<String, Tree.Change> changes = new TreeMap<>();
+        for (Blob blob : _stagefiles.values()) {
+            String from = files.get(blob.getfilename());
+            if (!blob.getshacode().equals(from)) {
+                changes.put(blob.getfilename(),
+                            new Tree.Change(from, blob.getshacode()));
+            }
         }
+        for (String filename : _rmfilenames) {
+            changes.put(filename,
+                        new Tree.Change(files.get(filename), null));
+        }
+        printdiff(changes, (filename, sha) -> new String(
+            ObjectStore.readall(new File(".gitlet/staging/" + sha)),
+            StandardCharsets.UTF_8));
+    }
+
+    /** java gitlet.Main diff [commit id] [commit id]: show the changes
+     *  from commit FROM to commit TO.  Subtrees the two commits share are
+     *  skipped without being read. */
+    public void diff(String from, String to) {
+        Commit comm1 = readcommit(CommitIndex.resolve(from));
+        Commit comm2 = readcommit(CommitIndex.resolve(to));
+        printdiff(Tree.diff(comm1.gettree(), comm2.gettree()),
+                  (filename, sha) -> contents(sha));
     }
 
-    /** find function. MSG*/
-    public void find(String msg) {
-        ArrayList<String> vals = new ArrayList<>();
-        File commitdir = new File(".gitlet/commits/");
-        for (File file : commitdir.listFiles()) {
-            Commit comm = Utils.readObject(file, Commit.class);
-            if (comm.getlogmsg().equals(msg)) {
-                System.out.println(comm.gethash());
-                vals.add(comm.gethash());
+    /** Print a unified diff for each of CHANGES, reading the old
+     *  version of each file from the object store and the new one, given
+     *  its filename and sha, with NEWTEXT. */
+    private void printdiff(Map<String, Tree.Change> changes,
+                           BiFunction<String, String, String> newtext) {
+        Writer out = logwriter();
+        for (Map.Entry<String, Tree.Change> e : changes.entrySet()) {
+            String filename = e.getKey();
+            Tree.Change change = e.getValue();
+            StringBuilder patch = new StringBuilder();
+            Diff.unified(patch, filename,
+                         change.from() == null ? null
+                         : contents(change.from()),
+                         change.to() == null ? null
+                         : newtext.apply(filename, change.to()));
+            try {
+                out.write(patch.toString());
+            } catch (IOException excp) {
+                break;
+            }
+            if (System.out.checkError()) {
+                break;
+            }
+        }
+        closelog(out);
+    }
+
+    /** Return a buffered writer onto System.out for log output. */
+    private static Writer logwriter() {
+        return new BufferedWriter(new OutputStreamWriter(
+            System.out, StandardCharsets.UTF_8), Blob.CHUNK);
+    }
+
+    /** Write the log entry of COMM to OUT, as a single line if ONELINE.
+     *  RETURN false iff nobody is reading the output any more, as when
+     *  it is piped into head. */
+    private static boolean printlog(Writer out, Commit comm,
+                                    boolean oneline) {
+        StringBuilder entry = new StringBuilder();
+        if (oneline) {
+            entry.append(comm.gethash(), 0, 7).append(' ')
+                .append(comm.getlogmsg()).append('\n');
+        } else {
+            entry.append("===\ncommit ").append(comm.gethash()).append('\n');
+            if (comm.getmergeparenthash() != null) {
+                entry.append("Merge: ")
+                    .append(comm.getparenthash(), 0, 7).append(' ')
+                    .append(comm.getmergeparenthash(), 0, 7).append('\n');
             }
+            entry.append("Date: ").append(comm.gettimestamp()).append('\n')
+                .append(comm.getlogmsg()).append("\n\n");
+        }
+        try {
+            out.write(entry.toString());
+        } catch (IOException excp) {
+            return false;
+        }
+        return !System.out.checkError();
+    }
+
+    /** Flush the log writer OUT, which is left open along with
+     *  System.out. */
+    private static void closelog(Writer out) {
+        try {
+            out.flush();
+        } catch (IOException excp) {
+            /* Nobody is reading the output any more. */
+        }
+    }
+
+    /** java gitlet.Main find [--substring | --token] [commit message]:
+     *  print the ids of the commits whose messages match MSG as directed
+     *  by HOW, using the message index. */
+    public void find(String msg, MessageIndex.Match how) {
+        List<String> vals = MessageIndex.find(msg, how);
+        for (String id : vals) {
+            System.out.println(id);
         }
         if (vals.isEmpty()) {
-            System.out.print("Found no commit with that message.");
+            throw Utils.error("Found no commit with that message.");
         }
     }
 
@@ -387,29 +687,33 @@ public class Repo implements Serializable {
     public HashMap<String, String> modinotstage() {
         HashMap<String, String> retfiles = new HashMap<>();
         Commit lastcomm = readcommit(_lastcommit);
+        HashSet<String> present = new HashSet<>();
         for (String filename : lastcomm.getfiles().keySet()) {
-            File f = new File(filename);
-            if (f.exists()) {
-                Blob blb = new Blob(filename);
-                if (!blb.getshacode().equals(
-                        lastcomm.getfiles().get(filename).getshacode())) {
-                    retfiles.put(filename, "modified");
-                }
-            } else if (!f.exists() && !_rmfilenames.contains(filename)) {
+            if (new File(filename).isFile()) {
+                present.add(filename);
+            } else if (!_rmfilenames.contains(filename)) {
                 retfiles.put(filename, "deleted");
             }
         }
+        for (String filename : _stagefiles.keySet()) {
+            if (new File(filename).isFile()) {
+                present.add(filename);
+            }
+        }
+        TreeMap<String, String> shas = Hasher.hash(present);
 
+        for (String filename : lastcomm.getfiles().keySet()) {
+            String sha = shas.get(filename);
+            if (sha != null && !_stagefiles.containsKey(filename)
+                    && !sha.equals(lastcomm.getfiles().get(filename))) {
+                retfiles.put(filename, "modified");
+            }
+        }
         for (String filename2 : _stagefiles.keySet()) {
-            File f2 = new File(filename2);
-            if (f2.exists()) {
-                Blob blb2 = new Blob(filename2);
-                if (!blb2.getshacode().equals(
-                        _stagefiles.get(filename2).getshacode())) {
-                    retfiles.put(filename2, "modified");
-                } else if (!f2.exists()) {
-                    retfiles.put(filename2, "deleted");
-                }
+            String sha2 = shas.get(filename2);
+            if (sha2 != null
+                    && !sha2.equals(_stagefiles.get(filename2).getshacode())) {
+                retfiles.put(filename2, "modified");
             }
         }
         return  retfiles;
@@ -419,9 +723,7 @@ public class Repo implements Serializable {
     public ArrayList<String> untracked() {
         ArrayList<String> retarr = new ArrayList<>();
         Commit lastcomm = readcommit(_lastcommit);
-        List<String> plainfiles = Utils.plainFilenamesIn(
-                new File(System.getProperty("user.dir")));
-        for (String filename : plainfiles) {
+        for (String filename : Worktree.files()) {
             if (!filename.equals(".gitignore")
                     && !filename.equals("Makefile")
                     && !filename.equals("proj3.iml")) {
@@ -439,8 +741,7 @@ public class Repo implements Serializable {
     /** creates a new branch on the commit tree.BRANCHNAME. */
     public void branch(String branchname) {
         if (_branchmap.containsKey(branchname)) {
-            System.out.print("A branch with that name already exists.");
-            System.exit(0);
+            throw Utils.error("A branch with that name already exists.");
         }
         _branchmap.put(branchname, _lastcommit);
     }
@@ -448,11 +749,9 @@ public class Repo implements Serializable {
     /** rm-branch.BRANCHNAME.*/
     public void rmbranch(String branchname) {
         if (!_branchmap.containsKey(branchname)) {
-            System.out.print("A branch with that name does not exist.");
-            System.exit(0);
+            throw Utils.error("A branch with that name does not exist.");
         } else if (branchname.equals(_currbranch)) {
-            System.out.print("Cannot remove the current branch.");
-            System.exit(0);
+            throw Utils.error("Cannot remove the current branch.");
         }
 
         _branchmap.remove(branchname);
@@ -460,138 +759,177 @@ public class Repo implements Serializable {
 
     /** reset.COMMITID.*/
     public void reset(String commitid) {
-        if (!_commitids.contains(commitid)) {
-            System.out.print("No commit with that id exists.");
-            System.exit(0);
-        }
-        File commfile = new File(".gitlet/commits/" + commitid);
-        Commit comm = Utils.readObject(commfile, Commit.class);
-
-        Commit currhead = readcommit(_lastcommit);
-        HashMap<String, Blob> commfiles = comm.getfiles();
-        HashMap<String, Blob> currheadfiles = currhead.getfiles();
+        commitid = CommitIndex.resolve(commitid);
+        switchto(readcommit(commitid));
+        _branchmap.put(_currbranch, commitid);
+        _lastcommit = _branchmap.get(_currbranch);
+    }
 
-        for (String file : commfiles.keySet()) {
-            File plstage = new File(file);
-            if (!currheadfiles.containsKey(file) && plstage.exists()) {
-                System.out.print("There is an untracked file "
-                        + "in the way; delete it or add it first.");
-                System.exit(0);
+    /** gc/repack: pack all objects into one pack file, storing each
+     *  version of a file as a delta against the next newer version of the
+     *  same file found walking back from the branch heads.  Commits met
+     *  on the way are rewritten in the current commit format. */
+    public void gc() {
+        HashMap<String, String> bases = new HashMap<>();
+        HashMap<String, String> newest = new HashMap<>();
+        HashMap<String, Integer> depth = new HashMap<>();
+        HashSet<String> seen = new HashSet<>(_branchmap.values());
+        ArrayDeque<String> queue = new ArrayDeque<>(seen);
+        while (!queue.isEmpty()) {
+            String id = queue.poll();
+            Commit comm = readcommit(id);
+            comm.write(new File(".gitlet/commits/" + id));
+            for (Map.Entry<String, String> file
+                     : comm.getfiles().entrySet()) {
+                String sha = file.getValue();
+                if (depth.containsKey(sha)) {
+                    continue;
+                }
+                String base = newest.get(file.getKey());
+                if (base != null && depth.get(base) < Pack.MAXDEPTH) {
+                    bases.put(sha, base);
+                    depth.put(sha, depth.get(base) + 1);
+                } else {
+                    depth.put(sha, 0);
+                }
+                newest.put(file.getKey(), sha);
             }
-        }
-
-        for (String filename : currheadfiles.keySet()) {
-            if (!commfiles.containsKey(filename)) {
-                File overwrite = new File(filename);
-                if (overwrite.exists()) {
-                    Utils.restrictedDelete(overwrite);
+            for (String parent : comm.getparents()) {
+                if (seen.add(parent)) {
+                    queue.add(parent);
                 }
             }
         }
-
-        for (String filename : commfiles.keySet()) {
-            checkout2(commitid, filename);
-        }
-
-        for (String filename : _stagefiles.keySet()) {
-            File delstage = new File(".gitlet/staging/"
-                    + _stagefiles.get(filename).getshacode());
-            delstage.delete();
-        }
-        _stagefiles.clear();
-        _branchmap.put(_currbranch, commitid);
-        _lastcommit = _branchmap.get(_currbranch);
+        ObjectStore.repack(bases);
     }
 
     /**helper function to read a commit file.
      * COMMITHASH.RETURN.*/
     public Commit readcommit(String commithash) {
-        return Utils.readObject(
-                new File(".gitlet/commits/" + commithash), Commit.class);
+        Commit comm = commitcache().get(commithash);
+        if (comm != null) {
+            _cachehits += 1;
+            return comm;
+        }
+        _cachemisses += 1;
+        comm = Commit.read(new File(".gitlet/commits/" + commithash));
+        _commitcache.put(commithash, comm);
+        return comm;
     }
 
-    /**merge function for gitlet.BRANCHNAME.*/
+    /** Return the commit cache, creating it with room for core.commitcache
+     *  commits on first use. */
+    private static LinkedHashMap<String, Commit> commitcache() {
+        if (_commitcache == null) {
+            int capacity = Math.max(1, Config.getint("core.commitcache",
+                                                     COMMITCACHE));
+            _commitcache = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, Commit> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+        return _commitcache;
+    }
+
+    /** Return a summary of the commit cache's hit and miss counts. */
+    static String cachestats() {
+        return String.format("Commit cache: %d hits, %d misses.",
+                             _cachehits, _cachemisses);
+    }
+
+    /**merge function for gitlet.  Every file the given branch changed
+     * since the split point is classified in one pass over the two
+     * commits' differences from the split point, and the resulting
+     * deletions, checkouts and line merges are then applied together.
+     * BRANCHNAME.*/
     public void merge(String branchname) {
         mergerrors(branchname);
         Commit split = ancestor(_lastcommit, _branchmap.get(branchname));
         Commit currcommit = readcommit(_lastcommit);
         Commit givencommit = readcommit(_branchmap.get(branchname));
         if (split.gethash().equals(givencommit.gethash())) {
-            System.out.print("Given branch"
+            throw Utils.error("Given branch"
                     + " is an ancestor of the current branch.");
-            System.exit(0);
         }
         if (split.gethash().equals(currcommit.gethash())) {
-            System.out.print("Current branch fast forwarded.");
             reset(givencommit.gethash());
-            System.exit(0);
-        }
-        for (String file : givencommit.getfiles().keySet()) {
-            File plstage = new File(file);
-            if (!currcommit.getfiles().containsKey(file) && plstage.exists()) {
-                System.out.print("There is an untracked file "
-                        + "in the way; delete it or add it first.");
-                System.exit(0);
-            }
-        }
-        for (String filename : givencommit.getfiles().keySet()) {
-            if (split.getfiles().containsKey(filename)) {
-                Blob blb = givencommit.getfiles().get(filename);
-                Blob blb2 = split.getfiles().get(filename);
-                if (blb != null && blb2 != null) {
-                    if (!blb.getshacode().equals(blb2.getshacode())) {
-                        checkout2(givencommit.gethash(), filename);
-                        add(filename);
-                    }
-                }
+            throw Utils.error("Current branch fast forwarded.");
+        }
+
+        TreeMap<String, Tree.Change> ours =
+            Tree.diff(split.gettree(), currcommit.gettree());
+        TreeMap<String, Tree.Change> theirs =
+            Tree.diff(split.gettree(), givencommit.gettree());
+        List<String> remove = new ArrayList<>();
+        TreeMap<String, String> take = new TreeMap<>();
+        TreeMap<String, Tree.Change> both = new TreeMap<>();
+        List<String> added = new ArrayList<>();
+        for (Map.Entry<String, Tree.Change> e : theirs.entrySet()) {
+            String filename = e.getKey();
+            String blb0 = e.getValue().from(), blb2 = e.getValue().to();
+            String blb1 = ours.containsKey(filename)
+                ? ours.get(filename).to() : blb0;
+            if (Objects.equals(blb1, blb2)) {
+                continue;
+            } else if (Objects.equals(blb0, blb1) && blb2 == null) {
+                remove.add(filename);
+                continue;
+            } else if (Objects.equals(blb0, blb1)) {
+                take.put(filename, blb2);
+            } else {
+                both.put(filename, ours.get(filename));
             }
-            if (!currcommit.getfiles().containsKey(filename)
-                    && !split.getfiles().containsKey(filename)) {
-                checkout2(givencommit.gethash(), filename);
-                add(filename);
+            if (blb1 == null) {
+                added.add(filename);
             }
         }
-        for (String filename: split.getfiles().keySet()) {
-            if (!currcommit.getfiles().containsKey(filename)
-                    && !givencommit.getfiles().containsKey(filename)) {
-                File file = new File(filename);
-                if (file.exists()) {
-                    _rmfilenames.remove(filename);
-                }
-            }
-            if (currcommit.getfiles().containsKey(filename)
-                    && !givencommit.getfiles().containsKey(filename)) {
-                Blob blb3 = split.getfiles().get(filename);
-                Blob blb4 = currcommit.getfiles().get(filename);
-                if (blb3.getshacode().equals(blb4.getshacode())) {
-                    rm(filename);
-                }
+        for (String filename : added) {
+            if (Worktree.inway(filename, remove)) {
+                throw Utils.error("There is an untracked file "
+                        + "in the way; delete it or add it first.");
             }
         }
-        mergehelper(split, currcommit, givencommit, branchname);
+
+        for (String filename : remove) {
+            Worktree.delete(filename);
+            _rmfilenames.add(filename);
+        }
+        Hasher.materialize(take);
+        for (Map.Entry<String, String> e : take.entrySet()) {
+            _stagefiles.put(e.getKey(), new Blob(e.getKey(), e.getValue()));
+        }
+        boolean conflict = false;
+        for (Map.Entry<String, Tree.Change> e : both.entrySet()) {
+            Merge merge = new Merge(contents(e.getValue().from()),
+                                    contents(e.getValue().to()),
+                                    contents(theirs.get(e.getKey()).to()));
+            Utils.writeContents(Worktree.create(e.getKey()), merge.text());
+            conflict |= merge.conflicted();
+        }
+        _stagefiles.putAll(Hasher.stage(both.keySet()));
+        mergehelper(conflict, givencommit, branchname);
     }
 
     /** helper function to find merge errors.
      * BRANCHNAME */
     public void mergerrors(String branchname) {
         if (!_stagefiles.isEmpty() || !_rmfilenames.isEmpty()) {
-            System.out.print("You have uncommitted changes.");
-            System.exit(0);
+            throw Utils.error("You have uncommitted changes.");
         }
         if (!_branchmap.containsKey(branchname)) {
-            System.out.print("A branch with that name does not exist.");
-            System.exit(0);
+            throw Utils.error("A branch with that name does not exist.");
         }
         if (branchname.equals(_currbranch)) {
-            System.out.print("Cannot merge a branch with itself.");
-            System.exit(0);
+            throw Utils.error("Cannot merge a branch with itself.");
         }
     }
-    /**helper function for merge.
-     * SPLIT. CURRCOMMIT. GIVENCOMMIT. BRANCHNAME.*/
-    public void mergehelper(Commit split, Commit currcommit,
-                            Commit givencommit, String branchname) {
-        Boolean mergeconflict = mergeconflict(split, currcommit, givencommit);
+    /**helper function for merge: commits the merge of GIVENCOMMIT,
+     * the head of BRANCHNAME, reporting a CONFLICT if there was one.*/
+    public void mergehelper(boolean conflict, Commit givencommit,
+                            String branchname) {
         String message = "Merged " + branchname + " into " + _currbranch + ".";
         String timestamp = ZonedDateTime.now().format
                 (DateTimeFormatter.ofPattern
@@ -599,145 +937,50 @@ public class Repo implements Serializable {
         _merge = true;
         _lastmerge = givencommit.gethash();
         commit(message, timestamp);
-        if (mergeconflict) {
+        if (conflict) {
             System.out.print("Encountered a merge conflict.");
         }
     }
 
-    /**helper function for detecting merge conflicts.
-     * GIVENCOMMIT.CURRCOMMIT.SPLIT.RETURN.*/
-    public boolean mergeconflict(Commit split,
-                                 Commit currcommit, Commit givencommit) {
-        for (String filename : split.getfiles().keySet()) {
-            if (currcommit.getfiles().containsKey(filename)) {
-                if (givencommit.getfiles().containsKey(filename)) {
-                    Blob blb1 = currcommit.getfiles().get(filename);
-                    Blob blb2 = givencommit.getfiles().get(filename);
-                    if (!blb1.getshacode().equals(blb2.getshacode())) {
-                        replacecon(filename, blb1, blb2);
-                        return true;
-                    }
-                } else {
-                    Blob blb1 = split.getfiles().get(filename);
-                    Blob blb2 = currcommit.getfiles().get(filename);
-                    if (!blb1.getshacode().equals(blb2.getshacode())) {
-                        blb1 = currcommit.getfiles().get(filename);
-                        blb2 = givencommit.getfiles().get(filename);
-                        replacecon(filename, blb1, blb2);
-                        return true;
-                    }
-                }
-            } else {
-                if (givencommit.getfiles().containsKey(filename)) {
-                    Blob blb1 = split.getfiles().get(filename);
-                    Blob blb2 = givencommit.getfiles().get(filename);
-                    if (!blb1.getshacode().equals(blb2.getshacode())) {
-                        blb1 = currcommit.getfiles().get(filename);
-                        replacecon(filename, blb1, blb2);
-                        return true;
-                    }
-                }
-            }
-        }
-        for (String filename : currcommit.getfiles().keySet()) {
-            if (!split.getfiles().containsKey(filename)) {
-                if (givencommit.getfiles().containsKey(filename)) {
-                    Blob blb3 = currcommit.getfiles().get(filename);
-                    Blob blb4 = givencommit.getfiles().get(filename);
-                    if (!blb3.getshacode().equals(blb4.getshacode())) {
-                        replacecon(filename, blb3, blb4);
-                        return true;
-                    }
-                }
-            }
-        }
-        for (String filename : givencommit.getfiles().keySet()) {
-            if (!split.getfiles().containsKey(filename)) {
-                if (currcommit.getfiles().containsKey(filename)) {
-                    Blob blb3 = currcommit.getfiles().get(filename);
-                    Blob blb4 = givencommit.getfiles().get(filename);
-                    if (!blb3.getshacode().equals(blb4.getshacode())) {
-                        replacecon(filename, blb3, blb4);
-                        return true;
-                    }
-                }
-            }
-        }
-        return false;
+    /** Return the contents of blob BLB, or the empty string if BLB is
+     *  null. */
+    private static String contents(String blb) {
+        return blb == null ? "" : ObjectStore.readAsString(blb);
     }
 
-    /** helper function to replace contents.
-     * BLB1.BLB2.FILENAME.*/
-    private void replacecon(String filename, Blob blb1, Blob blb2) {
-        String one = "<<<<<<< HEAD\n";
-        String two = "=======\n";
-        String three = ">>>>>>>";
-        String blb1con;
-
-        if (blb1 == null) {
-            blb1con = "";
-        } else {
-            blb1con = blb1.getcontents();
-        }
-
-        String blb2con;
-        if (blb2 == null) {
-            blb2con = "";
-        } else {
-            blb2con = blb2.getcontents();
-        }
-
-        String total = one + blb1con + two + blb2con + three + "\n";
-        File file = new File(filename);
-        Utils.writeContents(file, total);
-        add(filename);
-    }
-
-    /**helper function for finding ancestor given two branch heads.
+    /**helper function for finding the split point of two branch heads:
+     * walks back from both at once, newest generation first, and stops
+     * at the first commit reached from both.
      * BRANCH1.BRANCH2.RETURN */
     private Commit ancestor(String branch1, String branch2) {
-        Commit commit1 = Utils.readObject(new
-                File(".gitlet/commits/" + branch1), Commit.class);
-        Commit commit2 = Utils.readObject(new
-                File(".gitlet/commits/" + branch2), Commit.class);
-
-        HashMap<String, Integer> commit1parents = bfs(commit1, 0);
-        HashMap<String, Integer> commit2parents = bfs(commit2, 0);
-
-        HashMap<String, Integer> commonances = new HashMap<>();
-
-        for (String comm : commit1parents.keySet()) {
-            if (commit2parents.containsKey(comm)) {
-                commonances.put(comm, commit1parents.get(comm));
+        int start1 = CommitGraph.position(branch1);
+        int start2 = CommitGraph.position(branch2);
+        HashMap<Integer, Integer> reached = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>(
+            Comparator.comparingInt(CommitGraph::generation)
+                .thenComparingInt(pos -> pos).reversed());
+        reached.put(start1, 1);
+        queue.add(start1);
+        reached.put(start2, reached.getOrDefault(start2, 0) | 2);
+        if (start2 != start1) {
+            queue.add(start2);
+        }
+        while (!queue.isEmpty()) {
+            int comm = queue.poll();
+            int sides = reached.get(comm);
+            if (sides == 3) {
+                return readcommit(CommitGraph.id(comm));
             }
-        }
-
-        Map.Entry<String, Integer> min = Collections.min(commonances.entrySet(),
-                Comparator.comparing(Map.Entry::getValue));
-        Commit retcomm = Utils.readObject(new
-                File(".gitlet/commits/" + min.getKey()), Commit.class);
-        return retcomm;
-    }
-
-    /**helper function to find all ancestors of a given commit.
-     * DISTANCE.COMMIT.RETURN. */
-    private HashMap<String, Integer> bfs(Commit commit, Integer distance) {
-        HashMap<String, Integer> ancestors = new HashMap<>();
-
-        if (commit == null) {
-            return ancestors;
-        }
-        ancestors.put(commit.gethash(), distance);
-        if (commit.getparents() != null) {
-            for (String comm : commit.getparents()) {
-                Commit commit1 = Utils.readObject(new
-                        File(".gitlet/commits/" + comm), Commit.class);
-                ancestors.putAll(bfs(commit1, distance + 1));
+            for (int parent : CommitGraph.parents(comm)) {
+                Integer seen = reached.get(parent);
+                if (seen == null) {
+                    queue.add(parent);
+                    seen = 0;
+                }
+                reached.put(parent, seen | sides);
             }
         }
-        return ancestors;
+        throw Utils.error("No common ancestor.");
     }
 
 }
-
-
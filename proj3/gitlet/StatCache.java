@@ -0,0 +1,209 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/** Stat cache for Gitlet, the tiny stupid version-control system.
+ *  .gitlet/index remembers, for each working file that has been hashed,
+ *  its size, modification time and inode (where the platform reports
+ *  one) together with the blob sha it hashed to.  As long as a file's stat
+ *  data is unchanged, its sha is taken from the cache instead of reading
+ *  and hashing the file again.
+ *
+ *  Like git, entries for files modified within RACY milliseconds of being
+ *  recorded are not trusted, since a later write in the same clock tick
+ *  would not change the modification time.
+ *
+ *  hash may be called from several threads at once (see Hasher); the
+ *  cache itself is only touched while holding the class lock, and files
+ *  are hashed outside it.
+ *  @author Varun Jadia
+ */
+class StatCache {
+
+    /** The cache file. */
+    static final File INDEX = new File(".gitlet/index");
+
+    /** Magic bytes starting the cache file. */
+    private static final byte[] MAGIC = {'G', 'S', 'T', 'C'};
+
+    /** Format version. */
+    private static final int VERSION = 1;
+
+    /** Files changed this recently (in milliseconds) are not cached. */
+    private static final long RACY = 2000;
+
+    /** Cached entries by filename, or null if not yet read. */
+    private static HashMap<String, Entry> _entries;
+
+    /** True iff _entries differs from INDEX. */
+    private static boolean _dirty;
+
+    /** Return the blob sha of working file FILENAME, hashing it only if
+     *  its stat data no longer matches the cache. */
+    static String hash(String filename) {
+        Entry stat = stat(filename);
+        Entry cached = lookup(filename);
+        if (stat != null && stat.matches(cached)) {
+            return cached.sha;
+        }
+        String sha = new Blob(filename).getshacode();
+        record(filename, sha, stat);
+        return sha;
+    }
+
+    /** Return the cached sha of working file FILENAME if its stat data
+     *  still matches the cache, and otherwise null. */
+    static String cached(String filename) {
+        Entry stat = stat(filename);
+        Entry cached = lookup(filename);
+        if (stat != null && stat.matches(cached)) {
+            return cached.sha;
+        }
+        return null;
+    }
+
+    /** Record that working file FILENAME now hashes to SHA. */
+    static void record(String filename, String sha) {
+        record(filename, sha, stat(filename));
+    }
+
+    /** Return the cache entry for FILENAME, or null if there is none. */
+    private static synchronized Entry lookup(String filename) {
+        load();
+        return _entries.get(filename);
+    }
+
+    /** Record that working file FILENAME, whose stat data before it was
+     *  hashed was STAT, hashes to SHA. */
+    private static synchronized void record(String filename, String sha,
+                                            Entry stat) {
+        load();
+        if (stat == null
+                || System.currentTimeMillis() - stat.mtime / 1000000 < RACY) {
+            if (_entries.remove(filename) != null) {
+                _dirty = true;
+            }
+            return;
+        }
+        stat.sha = sha;
+        _entries.put(filename, stat);
+        _dirty = true;
+    }
+
+    /** Write the cache back to INDEX if it has changed. */
+    static synchronized void save() {
+        if (!_dirty) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.write(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(_entries.size());
+            for (Map.Entry<String, Entry> e
+                     : new TreeMap<>(_entries).entrySet()) {
+                Utils.writestring(out, e.getKey());
+                out.writeLong(e.getValue().size);
+                out.writeLong(e.getValue().mtime);
+                out.writeLong(e.getValue().inode);
+                Utils.writesha(out, e.getValue().sha);
+            }
+            out.close();
+            Utils.writeatomic(INDEX, bytes.toByteArray());
+            _dirty = false;
+        } catch (IOException excp) {
+            throw Utils.error("Internal error writing index.");
+        }
+    }
+
+    /** Read INDEX, if it has not been read already. */
+    private static void load() {
+        if (_entries != null) {
+            return;
+        }
+        _entries = new HashMap<>();
+        if (!INDEX.exists()) {
+            return;
+        }
+        try {
+            DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(Utils.readContents(INDEX)));
+            Utils.readheader(in, MAGIC, VERSION);
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                String filename = Utils.readstring(in);
+                Entry e = new Entry(in.readLong(), in.readLong(),
+                                    in.readLong());
+                e.sha = Utils.readsha(in);
+                _entries.put(filename, e);
+            }
+        } catch (IOException | IllegalArgumentException excp) {
+            _entries.clear();
+        }
+    }
+
+    /** Return the current stat data of working file FILENAME, or null if
+     *  it is not a plain file. */
+    private static Entry stat(String filename) {
+        Path path = new File(filename).toPath();
+        try {
+            BasicFileAttributes attrs =
+                Files.readAttributes(path, BasicFileAttributes.class);
+            if (!attrs.isRegularFile()) {
+                return null;
+            }
+            long inode = -1;
+            try {
+                inode = ((Number) Files.getAttribute(path, "unix:ino"))
+                    .longValue();
+            } catch (UnsupportedOperationException
+                     | IllegalArgumentException excp) {
+                inode = -1;
+            }
+            FileTime mtime = attrs.lastModifiedTime();
+            return new Entry(attrs.size(), mtime.to(TimeUnit.NANOSECONDS),
+                             inode);
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Stat data and sha of one working file. */
+    private static class Entry {
+        /** Size in bytes. */
+        private final long size;
+        /** Modification time in nanoseconds since the epoch. */
+        private final long mtime;
+        /** Inode number, or -1 if unknown. */
+        private final long inode;
+        /** Blob sha of the file's contents. */
+        private String sha;
+
+        /** Stat data SIZE, MTIME and INODE. */
+        Entry(long size, long mtime, long inode) {
+            this.size = size;
+            this.mtime = mtime;
+            this.inode = inode;
+        }
+
+        /** Return true iff OTHER is non-null and has the same stat data
+         *  as this. */
+        boolean matches(Entry other) {
+            return other != null && size == other.size
+                && mtime == other.mtime && inode == other.inode;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** Tree objects for Gitlet, the tiny stupid version-control system.  A
+ *  tree lists one directory of a commit: each entry is a blob or a
+ *  subtree, named by a single path component.  Trees live in the
+ *  ObjectStore under the sha of their encoding, so a directory that did
+ *  not change between two commits is the very same object in both, and a
+ *  commit only writes the trees on the paths to the files it changed.
+ *
+ *  A tree is "GTRE" and a version, an entry count, and then, in name
+ *  order, each entry's type byte (BLOB or TREE), name and 20-byte sha.
+ *  The empty tree is represented by a null sha and never stored.
+ *  @author Varun Jadia
+ */
+class Tree {
+
+    /** Entry type of a file. */
+    static final int BLOB = 0;
+
+    /** Entry type of a subdirectory. */
+    static final int TREE = 1;
+
+    /** Magic bytes starting an encoded tree. */
+    private static final byte[] MAGIC = {'G', 'T', 'R', 'E'};
+
+    /** Version of the tree encoding. */
+    private static final int VERSION = 1;
+
+    /** Entries of this directory, by name. */
+    private final TreeMap<String, Entry> _entries = new TreeMap<>();
+
+    /** Return the sha of the root tree of FILES, a map from
+     *  '/'-separated paths to blob shas, storing every tree in it. */
+    static String build(Map<String, String> files) {
+        return update(null, files);
+    }
+
+    /** Return the sha of the tree that results from applying CHANGES to
+     *  the tree ROOT.  CHANGES maps paths to their new blob shas, or to
+     *  null for paths to remove.  Only the trees on the paths to changed
+     *  files are rewritten; every other subtree is kept by sha.  A file
+     *  may replace a directory of the same name, or the reverse, when
+     *  CHANGES also removes everything the old one held. */
+    static String update(String root, Map<String, String> changes) {
+        if (changes.isEmpty()) {
+            return root;
+        }
+        Tree tree = root == null ? new Tree() : read(root);
+        TreeMap<String, HashMap<String, String>> below = new TreeMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int slash = path.indexOf('/');
+            if (slash >= 0) {
+                below.computeIfAbsent(path.substring(0, slash),
+                                      k -> new HashMap<>())
+                    .put(path.substring(slash + 1), change.getValue());
+            } else if (change.getValue() == null) {
+                tree._entries.remove(path);
+            } else {
+                tree._entries.put(path, new Entry(BLOB, change.getValue()));
+            }
+        }
+        for (Map.Entry<String, HashMap<String, String>> dir
+                 : below.entrySet()) {
+            Entry old = tree._entries.get(dir.getKey());
+            boolean isdir = old != null && old.type == TREE;
+            String sub = update(isdir ? old.sha : null, dir.getValue());
+            if (sub == null) {
+                if (isdir) {
+                    tree._entries.remove(dir.getKey());
+                }
+            } else {
+                tree._entries.put(dir.getKey(), new Entry(TREE, sub));
+            }
+        }
+        return tree.write();
+    }
+
+    /** Return a map from the path of every file under the tree ROOT to
+     *  its blob sha. */
+    static HashMap<String, String> flatten(String root) {
+        HashMap<String, String> files = new HashMap<>();
+        flatten(root, "", files);
+        return files;
+    }
+
+    /** Add every file under the tree ROOT to FILES, its path prefixed
+     *  by PREFIX. */
+    private static void flatten(String root, String prefix,
+                                Map<String, String> files) {
+        if (root == null) {
+            return;
+        }
+        for (Map.Entry<String, Entry> e : read(root)._entries.entrySet()) {
+            if (e.getValue().type == TREE) {
+                flatten(e.getValue().sha, prefix + e.getKey() + "/", files);
+            } else {
+                files.put(prefix + e.getKey(), e.getValue().sha);
+            }
+        }
+    }
+
+    /** Return the files that differ between the trees FROM and TO, in
+     *  path order, each mapped to its blob shas in FROM and TO (null
+     *  where absent).  Subtrees with the same sha in both are skipped
+     *  without being read. */
+    static TreeMap<String, Change> diff(String from, String to) {
+        TreeMap<String, Change> changes = new TreeMap<>();
+        diff(from, to, "", changes);
+        return changes;
+    }
+
+    /** Add the files that differ between the trees FROM and TO to
+     *  CHANGES, their paths prefixed by PREFIX. */
+    private static void diff(String from, String to, String prefix,
+                             Map<String, Change> changes) {
+        if (Objects.equals(from, to)) {
+            return;
+        }
+        TreeMap<String, Entry> old =
+            from == null ? new TreeMap<>() : read(from)._entries;
+        TreeMap<String, Entry> now =
+            to == null ? new TreeMap<>() : read(to)._entries;
+        TreeSet<String> names = new TreeSet<>(old.keySet());
+        names.addAll(now.keySet());
+        for (String name : names) {
+            Entry a = old.get(name), b = now.get(name);
+            String path = prefix + name;
+            String atree = a != null && a.type == TREE ? a.sha : null;
+            String btree = b != null && b.type == TREE ? b.sha : null;
+            String ablob = a != null && a.type == BLOB ? a.sha : null;
+            String bblob = b != null && b.type == BLOB ? b.sha : null;
+            if (!Objects.equals(ablob, bblob)) {
+                changes.put(path, new Change(ablob, bblob));
+            }
+            diff(atree, btree, path + "/", changes);
+        }
+    }
+
+    /** Return the tree stored as object SHA. */
+    static Tree read(String sha) {
+        try {
+            DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(ObjectStore.read(sha)));
+            Utils.readheader(in, MAGIC, VERSION);
+            Tree tree = new Tree();
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                int type = in.readByte();
+                String name = Utils.readstring(in);
+                tree._entries.put(name, new Entry(type, Utils.readsha(in)));
+            }
+            return tree;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Store this tree, unless it is empty, and return its sha, or null
+     *  if it is empty. */
+    private String write() {
+        if (_entries.isEmpty()) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.write(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(_entries.size());
+            for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+                out.writeByte(e.getValue().type);
+                Utils.writestring(out, e.getKey());
+                Utils.writesha(out, e.getValue().sha);
+            }
+            out.close();
+            byte[] encoded = bytes.toByteArray();
+            String sha = Utils.hex(Utils.sha1digest().digest(encoded));
+            ObjectStore.put(sha, encoded);
+            return sha;
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding tree.");
+        }
+    }
+
+    /** How one file differs between two trees. */
+    static class Change {
+        /** Blob sha of the file before, or null if it was absent. */
+        private final String from;
+        /** Blob sha of the file after, or null if it is absent. */
+        private final String to;
+
+        /** A change from blob FROM to blob TO. */
+        Change(String from, String to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        /** Return the blob sha before the change, or null. */
+        String from() {
+            return from;
+        }
+
+        /** Return the blob sha after the change, or null. */
+        String to() {
+            return to;
+        }
+    }
+
+    /** One entry of a tree. */
+    private static class Entry {
+        /** BLOB or TREE. */
+        private final int type;
+        /** Sha of the blob or subtree. */
+        private final String sha;
+
+        /** An entry of type TYPE for object SHA. */
+        Entry(int type, String sha) {
+            this.type = type;
+            this.sha = sha;
+        }
+    }
+}
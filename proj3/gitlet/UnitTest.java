@@ -3,7 +3,14 @@ package gitlet;
 import ucb.junit.textui;
 import org.junit.Test;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
 import static org.junit.Assert.*;
 
 /** The suite of all JUnit tests for the gitlet package.
@@ -28,6 +35,368 @@ public class UnitTest {
         return;
     }
 
+    /** Assert that a delta from BASE to TARGET rebuilds TARGET. */
+    private static void roundtrip(byte[] base, byte[] target) {
+        byte[] delta = Delta.create(base, target);
+        assertArrayEquals(target, Delta.apply(base, delta));
+    }
+
+    /** Return N random bytes drawn from RAND. */
+    private static byte[] randombytes(int n, Random rand) {
+        byte[] result = new byte[n];
+        rand.nextBytes(result);
+        return result;
+    }
+
+    /** Return A followed by B. */
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    /** Deltas rebuild their targets from identical, empty and unrelated
+     *  bases and targets. */
+    @Test
+    public void deltaEdgeCases() {
+        Random rand = new Random(22);
+        byte[] data = randombytes(1000, rand);
+        byte[] empty = new byte[0];
+        roundtrip(data, data);
+        roundtrip(empty, data);
+        roundtrip(data, empty);
+        roundtrip(empty, empty);
+        roundtrip(data, randombytes(1000, rand));
+        roundtrip(Arrays.copyOf(data, Delta.BLOCK - 1), data);
+        roundtrip(data, Arrays.copyOf(data, Delta.BLOCK + 1));
+        assertTrue(Delta.create(data, data).length < data.length / 10);
+    }
+
+    /** Deltas rebuild targets made by inserting, deleting and moving
+     *  pieces of their bases, and are small when little changed. */
+    @Test
+    public void deltaEdits() {
+        Random rand = new Random(7);
+        for (int trial = 0; trial < 200; trial += 1) {
+            byte[] base = randombytes(rand.nextInt(4000), rand);
+            byte[] target = base;
+            int edits = 1 + rand.nextInt(5);
+            for (int e = 0; e < edits; e += 1) {
+                int at = rand.nextInt(target.length + 1);
+                int len = rand.nextInt(100);
+                byte[] head = Arrays.copyOf(target, at);
+                byte[] tail = Arrays.copyOfRange(target, at, target.length);
+                switch (rand.nextInt(3)) {
+                case 0:
+                    target = concat(concat(head, randombytes(len, rand)),
+                                    tail);
+                    break;
+                case 1:
+                    target = concat(head, Arrays.copyOfRange(
+                        tail, Math.min(len, tail.length), tail.length));
+                    break;
+                default:
+                    target = concat(tail, head);
+                    break;
+                }
+            }
+            roundtrip(base, target);
+            roundtrip(target, base);
+            if (base.length >= 2000 && target.length >= 2000
+                    && edits == 1) {
+                assertTrue(Delta.create(base, target).length
+                           < target.length / 2);
+            }
+        }
+    }
+
+    /** Return the length of the longest common subsequence of A and B. */
+    private static int lcs(int[] a, int[] b) {
+        int[][] len = new int[a.length + 1][b.length + 1];
+        for (int i = a.length - 1; i >= 0; i -= 1) {
+            for (int j = b.length - 1; j >= 0; j -= 1) {
+                len[i][j] = a[i] == b[j] ? len[i + 1][j + 1] + 1
+                    : Math.max(len[i + 1][j], len[i][j + 1]);
+            }
+        }
+        return len[0][0];
+    }
+
+    /** Assert that MATCH, the result of Diff.match(A, B), pairs equal
+     *  elements in increasing order, and RETURN the number of pairs. */
+    private static int checkmatch(int[] a, int[] b, int[] match) {
+        assertEquals(a.length, match.length);
+        int count = 0, last = -1;
+        for (int i = 0; i < a.length; i += 1) {
+            if (match[i] >= 0) {
+                assertTrue(match[i] > last && match[i] < b.length);
+                assertEquals(a[i], b[match[i]]);
+                last = match[i];
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /** Return N random ints in [0, RANGE) drawn from RAND. */
+    private static int[] randomints(int n, int range, Random rand) {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = rand.nextInt(range);
+        }
+        return result;
+    }
+
+    /** Diff.match finds a longest common subsequence of small inputs. */
+    @Test
+    public void diffMatchIsLongest() {
+        Random rand = new Random(25);
+        for (int trial = 0; trial < 2000; trial += 1) {
+            int range = 1 + rand.nextInt(6);
+            int[] a = randomints(rand.nextInt(30), range, rand);
+            int[] b = randomints(rand.nextInt(30), range, rand);
+            assertEquals(lcs(a, b), checkmatch(a, b, Diff.match(a, b)));
+        }
+    }
+
+    /** Diff.match gives a valid matching of inputs too costly to diff
+     *  exactly, and still matches what a few edits left unchanged. */
+    @Test
+    public void diffMatchIsValid() {
+        Random rand = new Random(4);
+        int[] a = randomints(5000, 50, rand);
+        int[] b = randomints(5000, 50, rand);
+        checkmatch(a, b, Diff.match(a, b));
+        b = a.clone();
+        for (int e = 0; e < 10; e += 1) {
+            b[rand.nextInt(b.length)] = 50;
+        }
+        assertTrue(checkmatch(a, b, Diff.match(a, b)) >= a.length - 10);
+    }
+
+    /** Assert that merging OURS and THEIRS from BASE gives EXPECTED, with
+     *  a conflict iff CONFLICTED. */
+    private static void checkmerge(String base, String ours, String theirs,
+                                   String expected, boolean conflicted) {
+        Merge merge = new Merge(base, ours, theirs);
+        assertEquals(expected, merge.text());
+        assertEquals(conflicted, merge.conflicted());
+    }
+
+    /** A chunk changed on one side only takes that side's lines. */
+    @Test
+    public void mergeOneSide() {
+        String base = "a\nb\nc\n";
+        checkmerge(base, "a\nB\nc\n", base, "a\nB\nc\n", false);
+        checkmerge(base, base, "a\nB\nc\n", "a\nB\nc\n", false);
+        checkmerge(base, "a\nc\n", base, "a\nc\n", false);
+        checkmerge(base, base, "a\nb\nb2\nc\n", "a\nb\nb2\nc\n", false);
+        checkmerge(base, "A\nb\nc\n", "a\nb\nC\n", "A\nb\nC\n", false);
+        checkmerge("", "", "a\n", "a\n", false);
+    }
+
+    /** A chunk changed identically on both sides takes that change. */
+    @Test
+    public void mergeIdentical() {
+        String base = "a\nb\nc\n";
+        checkmerge(base, "a\nX\nc\n", "a\nX\nc\n", "a\nX\nc\n", false);
+        checkmerge(base, "a\nc\n", "a\nc\n", "a\nc\n", false);
+        checkmerge(base, "", "", "", false);
+        checkmerge("", "x\n", "x\n", "x\n", false);
+    }
+
+    /** A chunk changed differently on the two sides becomes a conflict
+     *  region holding just that chunk of each side. */
+    @Test
+    public void mergeConflicting() {
+        String base = "a\nb\nc\n";
+        checkmerge(base, "a\nX\nc\n", "a\nY\nc\n",
+                   "a\n" + Merge.OURS + "X\n" + Merge.SEPARATOR + "Y\n"
+                   + Merge.THEIRS + "c\n", true);
+        checkmerge(base, "a\nc\n", "a\nY\nc\n",
+                   "a\n" + Merge.OURS + Merge.SEPARATOR + "Y\n"
+                   + Merge.THEIRS + "c\n", true);
+        checkmerge("", "x\n", "y\n",
+                   Merge.OURS + "x\n" + Merge.SEPARATOR + "y\n"
+                   + Merge.THEIRS, true);
+        checkmerge("a\nb\nc\nd\ne\n", "a\nB\nc\nd\nE\n",
+                   "a\nb\nc\nD\nE2\n",
+                   "a\nB\nc\n" + Merge.OURS + "d\nE\n" + Merge.SEPARATOR
+                   + "D\nE2\n" + Merge.THEIRS, true);
+    }
+
+    /** Run TEST in a repository made in the current directory and
+     *  removed afterwards, unless the directory already holds one. */
+    private static void inscratchrepo(Runnable test) throws IOException {
+        File gitlet = new File(".gitlet");
+        if (gitlet.exists()) {
+            return;
+        }
+        try {
+            ObjectStore.OBJECTS.mkdirs();
+            test.run();
+        } finally {
+            for (File f : ObjectStore.OBJECTS.listFiles()) {
+                f.delete();
+            }
+            ObjectStore.OBJECTS.delete();
+            gitlet.delete();
+        }
+    }
+
+    /** A file committed in place of a directory of the same name
+     *  replaces the directory, and the reverse. */
+    @Test
+    public void treeFileAndDirectorySwap() throws IOException {
+        inscratchrepo(() -> {
+            String x = Utils.sha1("x"), d = Utils.sha1("d"),
+                e = Utils.sha1("e");
+            HashMap<String, String> files = new HashMap<>();
+            files.put("d/x", x);
+            files.put("e", e);
+            String dirtree = Tree.build(files);
+
+            HashMap<String, String> changes = new HashMap<>();
+            changes.put("d/x", null);
+            changes.put("d", d);
+            String filetree = Tree.update(dirtree, changes);
+            HashMap<String, String> expected = new HashMap<>();
+            expected.put("d", d);
+            expected.put("e", e);
+            assertEquals(expected, Tree.flatten(filetree));
+            assertEquals(2, Tree.diff(dirtree, filetree).size());
+            assertEquals(d, Tree.diff(dirtree, filetree).get("d").to());
+            assertNull(Tree.diff(dirtree, filetree).get("d/x").to());
+
+            changes.clear();
+            changes.put("d", null);
+            changes.put("d/x", x);
+            assertEquals(dirtree, Tree.update(filetree, changes));
+            assertEquals(files, Tree.flatten(dirtree));
+        });
+    }
+
+    /** Return N distinct random shas drawn from RAND. */
+    private static List<String> shas(int n, Random rand) {
+        List<String> result = new ArrayList<>();
+        while (result.size() < n) {
+            String sha = Utils.sha1(Long.toString(rand.nextLong()));
+            if (!result.contains(sha)) {
+                result.add(sha);
+            }
+        }
+        return result;
+    }
+
+    /** Return a new temporary file, deleted when the tests finish. */
+    private static File tempfile() throws IOException {
+        File file = File.createTempFile("gitlet-test-", "");
+        file.deleteOnExit();
+        return file;
+    }
+
+    /** A Bloom filter never denies holding a sha it was built from, and
+     *  rarely claims one it was not. */
+    @Test
+    public void bloomHasNoFalseNegatives() throws IOException {
+        Random rand = new Random(17);
+        List<String> added = shas(2000, rand);
+        File file = tempfile();
+        Bloom.write(file, added);
+        Bloom bloom = new Bloom(file);
+        for (String sha : added) {
+            assertTrue(sha, bloom.mightcontain(sha));
+        }
+        int falsepositives = 0;
+        for (String sha : shas(10000, rand)) {
+            if (!added.contains(sha) && bloom.mightcontain(sha)) {
+                falsepositives += 1;
+            }
+        }
+        assertTrue("false positives: " + falsepositives,
+                   falsepositives < 300);
+    }
+
+    /** An empty Bloom filter holds nothing. */
+    @Test
+    public void emptyBloom() throws IOException {
+        File file = tempfile();
+        Bloom.write(file, new ArrayList<>());
+        Bloom bloom = new Bloom(file);
+        for (String sha : shas(100, new Random(3))) {
+            assertFalse(bloom.mightcontain(sha));
+        }
+    }
+
+    /** Return N sorted random shas, including ones at both ends of the
+     *  fanout table. */
+    private static List<String> sortedshas(int n, Random rand) {
+        List<String> result = shas(n - 2, rand);
+        result.add("00" + result.get(0).substring(2));
+        result.add("ff" + result.get(1).substring(2));
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Every sha in an ObjectIndex is found at its sorted position with
+     *  its value, and shas not in it are not found. */
+    @Test
+    public void objectIndexFind() throws IOException {
+        Random rand = new Random(9);
+        List<String> shas = sortedshas(1000, rand);
+        long[] values = new long[shas.size()];
+        for (int i = 0; i < values.length; i += 1) {
+            values[i] = rand.nextLong();
+        }
+        File file = tempfile();
+        ObjectIndex.write(file, shas, values);
+        ObjectIndex index = new ObjectIndex(file);
+        assertEquals(shas.size(), index.size());
+        for (int k = 0; k < shas.size(); k += 1) {
+            assertEquals(k, index.find(shas.get(k)));
+            assertEquals(shas.get(k), index.sha(k));
+            assertEquals(values[k], index.value(k));
+        }
+        for (String sha : shas(200, rand)) {
+            if (!shas.contains(sha)) {
+                assertEquals(-1, index.find(sha));
+            }
+        }
+        assertEquals(-1, index.find(shas.get(0).substring(1)));
+        assertEquals(-1, index.find(""));
+    }
+
+    /** ObjectIndex.matching returns exactly the shas with a given prefix,
+     *  in order, for prefixes of every length. */
+    @Test
+    public void objectIndexMatching() throws IOException {
+        Random rand = new Random(5);
+        List<String> shas = sortedshas(3000, rand);
+        File file = tempfile();
+        ObjectIndex.write(file, shas, null);
+        ObjectIndex index = new ObjectIndex(file);
+        List<String> prefixes = new ArrayList<>();
+        for (int i = 0; i < 50; i += 1) {
+            String sha = shas.get(rand.nextInt(shas.size()));
+            prefixes.add(sha.substring(0, 1 + rand.nextInt(6)));
+            prefixes.add(Utils.sha1(sha).substring(0, 1 + rand.nextInt(4)));
+        }
+        prefixes.add(shas.get(0));
+        prefixes.add("00");
+        prefixes.add("f");
+        for (String prefix : prefixes) {
+            List<String> expected = new ArrayList<>();
+            for (String sha : shas) {
+                if (sha.startsWith(prefix)) {
+                    expected.add(sha);
+                }
+            }
+            assertEquals(prefix, expected, index.matching(prefix));
+        }
+        assertTrue(index.matching("").isEmpty());
+        assertTrue(index.matching("0g").isEmpty());
+        assertTrue(index.matching(shas.get(0) + "0").isEmpty());
+    }
 }
 
 
@@ -1,7 +1,10 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
@@ -9,14 +12,20 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Formatter;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 
 /** Assorted utilities.
@@ -32,27 +41,49 @@ class Utils {
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
-            }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+        MessageDigest md = sha1digest();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+            } else if (val instanceof String) {
+                md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            } else {
+                throw new IllegalArgumentException("improper type to sha1");
             }
-            return result.toString();
+        }
+        return hex(md.digest());
+    }
+
+    /** Returns a fresh SHA-1 MessageDigest, for callers that feed their
+     *  input incrementally rather than all at once. */
+    static MessageDigest sha1digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
     }
 
+    /** Returns BYTES as a lower-case hexadecimal numeral. */
+    static String hex(byte[] bytes) {
+        Formatter result = new Formatter();
+        for (byte b : bytes) {
+            result.format("%02x", b);
+        }
+        return result.toString();
+    }
+
+    /** Returns the bytes denoted by the hexadecimal numeral HEX, which
+     *  must have an even number of digits. */
+    static byte[] unhex(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = (byte) Integer.parseInt(
+                    hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
@@ -132,6 +163,75 @@ class Utils {
         }
     }
 
+    /** Replace the contents of FILE with CONTENTS so that, even if the
+     *  system crashes part way, FILE holds either all of its old contents
+     *  or all of the new: CONTENTS is written to a temporary file beside
+     *  FILE and forced to disk, and that file is then renamed over FILE.
+     *  Throws IllegalArgumentException in case of problems. */
+    static void writeatomic(File file, byte[] contents) {
+        File tmp = tempfile(file.getAbsoluteFile().getParentFile());
+        try (FileChannel ch = FileChannel.open(tmp.toPath(),
+                StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.wrap(contents);
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        install(tmp, file);
+    }
+
+    /** Return a new, empty temporary file in DIR whose name starts with
+     *  ".tmp-" and is unique even among concurrent processes.  Unlike
+     *  Files.createTempFile, which makes files only their owner can read,
+     *  this gives the file the default permissions set by the umask. */
+    static File tempfile(File dir) {
+        while (true) {
+            long id = ThreadLocalRandom.current().nextLong();
+            File tmp = new File(dir, ".tmp-" + Long.toUnsignedString(id, 36));
+            try {
+                Files.createFile(tmp.toPath());
+                return tmp;
+            } catch (FileAlreadyExistsException excp) {
+                continue;
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Force the fully written file TMP to disk and atomically rename it
+     *  to FILE, replacing any file already there and keeping its
+     *  permissions.  Throws IllegalArgumentException in case of
+     *  problems. */
+    static void install(File tmp, File file) {
+        try {
+            try (FileChannel ch = FileChannel.open(tmp.toPath(),
+                    StandardOpenOption.WRITE)) {
+                ch.force(true);
+            }
+            if (file.exists() && tmp.toPath().getFileSystem()
+                    .supportedFileAttributeViews().contains("posix")) {
+                Files.setPosixFilePermissions(tmp.toPath(),
+                    Files.getPosixFilePermissions(file.toPath()));
+            }
+            Files.move(tmp.toPath(), file.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        File dir = file.getAbsoluteFile().getParentFile();
+        try (FileChannel ch = FileChannel.open(dir.toPath())) {
+            ch.force(true);
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
@@ -216,6 +316,72 @@ class Utils {
         }
     }
 
+    /** Returns true iff BYTES look like the output of serialize, i.e.
+     *  start with the Java serialization stream magic number. */
+    static boolean isserialized(byte[] bytes) {
+        return bytes.length >= 2
+            && (bytes[0] & 0xff) == 0xac && (bytes[1] & 0xff) == 0xed;
+    }
+
+    /* BINARY ENCODING */
+
+    /** Write the possibly null string S to OUT as a length (-1 for null)
+     *  followed by its UTF-8 bytes. */
+    static void writestring(DataOutputStream out, String s)
+        throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /** Return a string written by writestring, read from IN. */
+    static String readstring(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Write the possibly null SHA-1 UID SHA to OUT as a presence flag
+     *  followed by its 20 raw bytes. */
+    static void writesha(DataOutputStream out, String sha)
+        throws IOException {
+        out.writeBoolean(sha != null);
+        if (sha != null) {
+            out.write(unhex(sha));
+        }
+    }
+
+    /** Return a UID written by writesha, read from IN. */
+    static String readsha(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        byte[] bytes = new byte[UID_LENGTH / 2];
+        in.readFully(bytes);
+        return hex(bytes);
+    }
+
+    /** Check that IN continues with the bytes MAGIC followed by the
+     *  version number VERSION.  Throws IllegalArgumentException
+     *  otherwise. */
+    static void readheader(DataInputStream in, byte[] magic, int version)
+        throws IOException {
+        byte[] found = new byte[magic.length];
+        in.readFully(found);
+        int v = in.readUnsignedShort();
+        if (!Arrays.equals(found, magic) || v != version) {
+            throw new IllegalArgumentException("unrecognized file format");
+        }
+    }
+
 
 
     /* MESSAGES AND ERROR REPORTING */
@@ -0,0 +1,193 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/** The working directory of a Gitlet repository.  Working files are named
+ *  by their path relative to the directory holding .gitlet, with '/'
+ *  between directories, so the same name is used in commits, the staging
+ *  area and on every platform.
+ *  @author Varun Jadia
+ */
+class Worktree {
+
+    /** Pathspec naming every file in the working directory. */
+    static final String ALL = "-A";
+
+    /** Return the names of all files in the working directory outside
+     *  .gitlet, in sorted order. */
+    static List<String> files() {
+        return files(".");
+    }
+
+    /** Return the names of all files at or below working path DIR, in
+     *  sorted order. */
+    static List<String> files(String dir) {
+        List<String> result = new ArrayList<>();
+        Path root = Paths.get(dir);
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(
+                        Path d, BasicFileAttributes attrs) {
+                    if (d.getFileName() != null
+                            && d.getFileName().toString().equals(".gitlet")) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path f,
+                                                 BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        result.add(name(f.toString()));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Return the working-file name denoted by PATH. */
+    static String name(String path) {
+        String result = Paths.get(path).normalize().toString();
+        return result.replace(File.separatorChar, '/');
+    }
+
+    /** Return true iff pathspec SPEC is a glob pattern rather than a
+     *  file or directory name. */
+    static boolean isglob(String spec) {
+        return spec.matches(".*[*?\\[{].*");
+    }
+
+    /** Add to PRESENT the working files selected by pathspec SPEC, and to
+     *  MISSING those files of TRACKED it selects that are no longer in the
+     *  working directory.  SPEC is ALL, a glob, a directory or a file
+     *  name; a file name selects only a file that is present, and a
+     *  directory name also selects a tracked file it replaced.  Return
+     *  false iff SPEC selects nothing at all. */
+    static boolean select(String spec, Set<String> tracked,
+                          Collection<String> present,
+                          Collection<String> missing) {
+        PathMatcher matcher;
+        List<String> candidates;
+        if (spec.equals(ALL)) {
+            matcher = p -> true;
+            candidates = files();
+        } else if (isglob(spec)) {
+            matcher =
+                FileSystems.getDefault().getPathMatcher("glob:" + spec);
+            candidates = files();
+        } else if (new File(spec).isDirectory()) {
+            String dir = name(spec);
+            String prefix = dir.equals("") || dir.equals(".") ? ""
+                : dir + "/";
+            matcher = p -> {
+                String path = p.toString().replace(File.separatorChar, '/');
+                return path.startsWith(prefix) || path.equals(dir);
+            };
+            candidates = files(spec);
+        } else if (new File(spec).isFile()) {
+            present.add(name(spec));
+            return true;
+        } else {
+            return false;
+        }
+
+        boolean found = false;
+        for (String filename : candidates) {
+            if (matcher.matches(Paths.get(filename))) {
+                present.add(filename);
+                found = true;
+            }
+        }
+        for (String filename : tracked) {
+            if (matcher.matches(Paths.get(filename))
+                    && !new File(filename).isFile()) {
+                missing.add(filename);
+                found = true;
+            }
+        }
+        return found;
+    }
+
+    /** Return true iff writing working file FILENAME would overwrite or
+     *  displace a file other than those in LEAVING, which are about to be
+     *  deleted: a file of that name, a file under a directory of that
+     *  name, or a file where one of its directories should be. */
+    static boolean inway(String filename, Collection<String> leaving) {
+        File file = new File(filename);
+        if (file.isDirectory()) {
+            for (String other : files(filename)) {
+                if (!leaving.contains(other)) {
+                    return true;
+                }
+            }
+            return false;
+        } else if (file.exists()) {
+            return !leaving.contains(filename);
+        }
+        for (File dir = file.getParentFile(); dir != null;
+             dir = dir.getParentFile()) {
+            if (dir.isFile() && !leaving.contains(name(dir.getPath()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return working file FILENAME, creating the directories it is to be
+     *  written in and removing an empty directory in its place. */
+    static File create(String filename) {
+        File file = new File(filename);
+        if (file.isDirectory()) {
+            file.delete();
+        }
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        return file;
+    }
+
+    /** Delete working file FILENAME, if it exists, together with any
+     *  directories that leaves empty.  Like Utils.restrictedDelete,
+     *  refuses to touch anything outside a Gitlet working directory.
+     *  Return true iff FILENAME was deleted. */
+    static boolean delete(String filename) {
+        if (!new File(".gitlet").isDirectory()) {
+            throw new IllegalArgumentException(
+                "not .gitlet working directory");
+        }
+        File file = new File(filename);
+        if (file.isDirectory() || !file.delete()) {
+            return false;
+        }
+        for (File dir = file.getParentFile(); dir != null
+                 && !dir.getPath().equals("."); dir = dir.getParentFile()) {
+            String[] rest = dir.list();
+            if (rest == null || rest.length > 0 || !dir.delete()) {
+                break;
+            }
+        }
+        return true;
+    }
+}